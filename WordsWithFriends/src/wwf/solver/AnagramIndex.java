@@ -0,0 +1,302 @@
+package wwf.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Finds the words that can be made from a set of tiles without walking the
+ * permutations of the tiles.
+ *
+ * Every word is filed under its signature, the multiset of its letters (so
+ * STARE, TEARS and RATES share one). A signature is keyed by a 64-bit hash
+ * that is the sum of one random value per letter, so the key of a multiset
+ * can be built up one letter at a time. A query walks the sub-multisets of
+ * the tray, plus whatever letters the blanks may stand for, and looks each
+ * one up: a few hundred binary searches instead of a search over orderings.
+ *
+ * Each signature holds the WordIds ids of its words, so the index keeps no
+ * word text of its own.
+ */
+public class AnagramIndex {
+	private static final long[] LETTER_KEYS = new long[26];
+	static {
+		// Fixed seed, so keys are the same from run to run
+		Random r = new Random(0x5757464CL);
+		for(int i=0; i<26; i++) {
+			LETTER_KEYS[i] = r.nextLong();
+		}
+	}
+
+	private WordIds words;
+	// Distinct signature keys in order, and for key k the ids
+	// ids[first[k] .. first[k+1])
+	private long[] keys;
+	private int[] first;
+	private int[] ids;
+
+	private AnagramIndex() {
+	}
+
+	/**
+	 * Indexes every word numbered by words.
+	 */
+	public static AnagramIndex build(WordIds words) {
+		AnagramIndex idx = new AnagramIndex();
+		idx.words = words;
+		int n = words.wordCount();
+		long[] wordKeys = new long[n];
+		char[] buf = new char[32];
+		for(int i=0; i<n; i++) {
+			int len;
+			while((len = words.word(i, buf)) > buf.length) {
+				buf = new char[len];
+			}
+			wordKeys[i] = keyOf(buf, len);
+		}
+
+		// Distinct keys, sorted
+		long[] sorted = wordKeys.clone();
+		Arrays.sort(sorted);
+		int k = 0;
+		for(int i=0; i<n; i++) {
+			if(k == 0 || sorted[i] != sorted[k-1]) {
+				sorted[k++] = sorted[i];
+			}
+		}
+		idx.keys = Arrays.copyOf(sorted, k);
+
+		// Bucket the ids by key, keeping them in alphabetical order
+		idx.first = new int[k+1];
+		int[] slot = new int[n];
+		for(int i=0; i<n; i++) {
+			slot[i] = Arrays.binarySearch(idx.keys, wordKeys[i]);
+			idx.first[slot[i]+1]++;
+		}
+		for(int i=0; i<k; i++) {
+			idx.first[i+1] += idx.first[i];
+		}
+		int[] fill = Arrays.copyOf(idx.first, k);
+		idx.ids = new int[n];
+		for(int i=0; i<n; i++) {
+			idx.ids[fill[slot[i]]++] = i;
+		}
+		return idx;
+	}
+
+	private static long keyOf(char[] w, int len) {
+		long key = 0;
+		for(int i=0; i<len; i++) {
+			key += LETTER_KEYS[w[i] - 'A'];
+		}
+		return key;
+	}
+
+	/**
+	 * Number of words indexed.
+	 */
+	public int wordCount() {
+		return ids.length;
+	}
+
+	/**
+	 * Number of distinct signatures.
+	 */
+	public int signatureCount() {
+		return keys.length;
+	}
+
+	/**
+	 * Every word that can be made from some of the letters, each with every
+	 * way of covering it with the blanks ('*') - the same results as a search
+	 * through the word graph, in alphabetical order.
+	 */
+	public ArrayList<Word> subAnagrams(String letters) {
+		return find(letters, false);
+	}
+
+	/**
+	 * Like subAnagrams, but only words that use every tile.
+	 */
+	public ArrayList<Word> anagrams(String letters) {
+		return find(letters, true);
+	}
+
+	private ArrayList<Word> find(String letters, boolean useAll) {
+		Query q = new Query(letters.toUpperCase(), useAll);
+		q.letters(0, 0);
+		// Sort by word, then by blank positions
+		long[] found = new long[q.found.size()];
+		for(int i=0; i<found.length; i++) {
+			found[i] = q.found.get(i);
+		}
+		Arrays.sort(found);
+		ArrayList<Word> result = new ArrayList<Word>(found.length);
+		for(long f : found) {
+			int len = words.word((int)(f >>> 32), q.buf);
+			result.add(toWord(q.buf, len, (int)f));
+		}
+		return result;
+	}
+
+	/**
+	 * Adds to out each way the tiles can make word, as subAnagrams (or
+	 * anagrams, if useAll) would if word were indexed. word must be in
+	 * upper case.
+	 */
+	public void addWays(String word, String letters, boolean useAll, ArrayList<Word> out) {
+		Query q = new Query(letters.toUpperCase(), useAll);
+		int len = word.length();
+		if(len == 0 || len > q.buf.length || (useAll && len != q.buf.length)) {
+			return;
+		}
+		q.len = len;
+		word.getChars(0, len, q.buf, 0);
+		for(int i=0; i<len; i++) {
+			q.wordCounts[q.buf[i] - 'A']++;
+		}
+		q.masks(0, 0, 0, 0);
+		long[] found = new long[q.found.size()];
+		for(int i=0; i<found.length; i++) {
+			found[i] = q.found.get(i);
+		}
+		Arrays.sort(found);
+		for(long f : found) {
+			out.add(toWord(q.buf, len, (int)f));
+		}
+	}
+
+	private static Word toWord(char[] buf, int len, int mask) {
+		char[] blanks = new char[len];
+		for(int i=0; i<len; i++) {
+			blanks[i] = ((mask & (1 << i)) != 0 ? 'B' : '.');
+		}
+		return new Word(new String(buf, 0, len), new String(blanks));
+	}
+
+	/**
+	 * State of one lookup: the tray, and the multiset being built from it.
+	 */
+	private class Query {
+		int[] tray = new int[26];
+		int blanks = 0;
+		int trayCount = 0;
+		boolean useAll;
+		int[] counts = new int[26];
+		int size = 0;
+		HashSet<Long> tried = new HashSet<Long>();
+		// (id << 32) | blank mask
+		ArrayList<Long> found = new ArrayList<Long>();
+		int[] wordCounts = new int[26];
+		// The word being looked at; no word is longer than the multiset
+		char[] buf;
+		int len;
+
+		Query(String letters, boolean useAll) {
+			for(int i=0; i<letters.length(); i++) {
+				char c = letters.charAt(i);
+				if(c == '*') {
+					blanks++;
+				}
+				else if(c >= 'A' && c <= 'Z') {
+					tray[c - 'A']++;
+					trayCount++;
+				}
+			}
+			this.useAll = useAll;
+			buf = new char[trayCount + blanks];
+		}
+
+		/**
+		 * Chooses how many of each tray letter, from letter l on, to use.
+		 */
+		void letters(int l, long key) {
+			if(l == 26) {
+				if(!useAll || size == trayCount) {
+					blanks(0, blanks, key);
+				}
+				return;
+			}
+			int max = tray[l];
+			for(int k=0; ; k++) {
+				letters(l+1, key);
+				if(k == max) {
+					break;
+				}
+				counts[l]++;
+				size++;
+				key += LETTER_KEYS[l];
+			}
+			counts[l] -= max;
+			size -= max;
+		}
+
+		/**
+		 * Adds up to left more letters, from letter l on, for the blanks.
+		 */
+		void blanks(int l, int left, long key) {
+			if(!useAll || left == 0) {
+				lookup(key);
+			}
+			if(left == 0) {
+				return;
+			}
+			for(int b=l; b<26; b++) {
+				counts[b]++;
+				size++;
+				blanks(b, left-1, key + LETTER_KEYS[b]);
+				counts[b]--;
+				size--;
+			}
+		}
+
+		void lookup(long key) {
+			if(size == 0 || !tried.add(key)) {
+				return;
+			}
+			int k = Arrays.binarySearch(keys, key);
+			if(k < 0) {
+				return;
+			}
+			for(int i=first[k]; i<first[k+1]; i++) {
+				int id = ids[i];
+				len = words.word(id, buf);
+				if(len != size) {
+					continue;
+				}
+				// The hash could in theory be shared by another multiset
+				Arrays.fill(wordCounts, 0);
+				for(int j=0; j<len; j++) {
+					wordCounts[buf[j] - 'A']++;
+				}
+				if(Arrays.equals(wordCounts, counts)) {
+					masks(id, 0, 0, 0);
+				}
+			}
+		}
+
+		/**
+		 * Adds word id once for each set of positions the blanks can cover:
+		 * the letters left uncovered must all come from the tray.
+		 */
+		void masks(int id, int pos, int mask, int used) {
+			if(pos == len) {
+				for(int l=0; l<26; l++) {
+					if(wordCounts[l] > tray[l]) {
+						return;
+					}
+				}
+				found.add(((long)id << 32) | (mask & 0xFFFFFFFFL));
+				return;
+			}
+			masks(id, pos+1, mask, used);
+			if(used < blanks && pos < 32) {
+				int l = buf[pos] - 'A';
+				wordCounts[l]--;
+				masks(id, pos+1, mask | (1 << pos), used+1);
+				wordCounts[l]++;
+			}
+		}
+	}
+}
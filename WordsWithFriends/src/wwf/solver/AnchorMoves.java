@@ -0,0 +1,140 @@
+package wwf.solver;
+
+/**
+ * findMoves by anchors on the word graph (Dictionary.Strategy.ANCHOR), as
+ * in Appel and Jacobson's generator. Before an anchor there are either
+ * tiles, which begin every move through it, or empty squares that are no
+ * anchors, which take the left parts: the prefixes of words that the tray
+ * can make, each walked once for the anchor. The rest of each word is then
+ * extended rightwards from the anchor over the tiles and empty squares.
+ */
+final class AnchorMoves extends MoveGenerator {
+	private Lexicon lex;
+	private int anchorPos;
+	// The left part being built, laid on the squares before the anchor
+	// once its length is known
+	private char[] left;
+	private boolean[] leftBlank;
+
+	AnchorMoves(GameBoard g, CrossChecks checks, Lexicon lex, String letterTray) {
+		super(g, checks, letterTray);
+		this.lex = lex;
+		left = new char[size];
+		leftBlank = new boolean[size];
+	}
+
+	@Override
+	protected void searchAnchor(int k) {
+		anchorPos = k;
+		if(!empty(k-1)) {
+			int lo = k-1;
+			while(!empty(lo-1)) {
+				lo--;
+			}
+			int node = lex.root();
+			for(int p=lo; p<k && node != Lexicon.NONE; p++) {
+				letters[p] = line[p];
+				node = lex.getNextLetter(node, line[p]);
+			}
+			if(node != Lexicon.NONE) {
+				extendRight(k, node, lo);
+			}
+			return;
+		}
+		// Squares before the anchor that are not anchors have nothing
+		// beside them, so take any letter
+		int limit = 0;
+		while(k-limit-1 >= 0 && empty(k-limit-1) && !anchor[k-limit-1]) {
+			limit++;
+		}
+		leftPart(lex.root(), 0, limit);
+	}
+
+	/**
+	 * Tries the left part of len letters reaching node, then the longer
+	 * ones it starts, up to limit letters.
+	 */
+	private void leftPart(int node, int len, int limit) {
+		int lo = anchorPos - len;
+		for(int i=0; i<len; i++) {
+			letters[lo+i] = left[i];
+			placedBlank[lo+i] = leftBlank[i];
+		}
+		extendRight(anchorPos, node, lo);
+		// A tile has to be left for the anchor
+		if(len == limit || tilesLeft <= 1) {
+			return;
+		}
+		for(int m = lex.childMask(node); m != 0; m &= m-1) {
+			int l = Integer.numberOfTrailingZeros(m);
+			char c = (char)('A' + l);
+			int next = lex.getNextLetter(node, c);
+			left[len] = c;
+			tilesLeft--;
+			if(rack[l] > 0) {
+				rack[l]--;
+				leftBlank[len] = false;
+				leftPart(next, len+1, limit);
+				rack[l]++;
+			}
+			if(blanks > 0) {
+				blanks--;
+				leftBlank[len] = true;
+				leftPart(next, len+1, limit);
+				blanks++;
+			}
+			tilesLeft++;
+		}
+	}
+
+	/**
+	 * Puts a letter on square pos, from node; the word starts on square lo.
+	 */
+	private void extendRight(int pos, int node, int lo) {
+		if(pos >= size) {
+			return;
+		}
+		if(line[pos] != 0) {
+			int next = lex.getNextLetter(node, line[pos]);
+			if(next != Lexicon.NONE) {
+				letters[pos] = line[pos];
+				goOn(pos, next, lo);
+			}
+			return;
+		}
+		if(tilesLeft == 0) {
+			return;
+		}
+		int choices = lex.childMask(node) & cross[pos];
+		for(int m = choices; m != 0; m &= m-1) {
+			int l = Integer.numberOfTrailingZeros(m);
+			char c = (char)('A' + l);
+			int next = lex.getNextLetter(node, c);
+			letters[pos] = c;
+			tilesLeft--;
+			if(rack[l] > 0) {
+				rack[l]--;
+				placedBlank[pos] = false;
+				goOn(pos, next, lo);
+				rack[l]++;
+			}
+			if(blanks > 0) {
+				blanks--;
+				placedBlank[pos] = true;
+				goOn(pos, next, lo);
+				blanks++;
+			}
+			tilesLeft++;
+		}
+	}
+
+	/**
+	 * A letter has just gone on square pos, reaching node.
+	 */
+	private void goOn(int pos, int node, int lo) {
+		if(lex.isEndOfWord(node) && empty(pos+1)) {
+			record(lo, pos);
+		}
+		extendRight(pos+1, node, lo);
+	}
+}
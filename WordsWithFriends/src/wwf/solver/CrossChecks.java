@@ -0,0 +1,204 @@
+package wwf.solver;
+
+import java.util.Arrays;
+
+import wwf.solver.GameBoard.Dir;
+import wwf.solver.GameBoard.Mul;
+
+/**
+ * The letters that can go on each empty square of a board as far as the
+ * tiles beside it are concerned, and what the words they make there score.
+ * For a word going right those are the words with the tiles above and below
+ * the square, and for a word going down with the tiles to its left and
+ * right. A square with no tiles on either side takes any letter and scores
+ * nothing across.
+ *
+ * Also knows the anchors: the empty squares next to a tile, one of which
+ * every move covers.
+ *
+ * Built by GameBoard.crossChecks for one set of words, and shared by every
+ * move looked at, by any number of searches at once: it is never changed
+ * once made. When tiles are put down or taken up, updated makes a copy with
+ * only the rows and columns through them worked out again: a square's
+ * letters across a word going right depend only on its column, those
+ * across a word going down only on its row, and whether it is an anchor
+ * only on both.
+ */
+final class CrossChecks {
+	static final int ALL = (1 << 26) - 1;
+	// Points index of a blank, after the letters
+	private static final int BLANK = 26;
+
+	private Lexicon lex;
+	private int size;
+	// Bit l set if letter l can go on the square, by r*size + c; 0 on
+	// squares holding a tile
+	private int[] right;
+	private int[] down;
+	// Points of the word made across by a tile on the square, by
+	// (r*size + c)*27 + l, BLANK for a blank
+	private int[] rightPoints;
+	private int[] downPoints;
+	private boolean[] anchors;
+	// Points of each letter's tile, BLANK for a blank
+	private int[] values;
+
+	CrossChecks(GameBoard g, Lexicon lex) {
+		this.lex = lex;
+		size = g.size();
+		right = new int[size*size];
+		down = new int[size*size];
+		rightPoints = new int[size*size*27];
+		downPoints = new int[size*size*27];
+		anchors = new boolean[size*size];
+		values = new int[27];
+		for(int l=0; l<26; l++) {
+			values[l] = new Tile((char)('A' + l), g.getGameType()).pointValue();
+		}
+		boolean[] all = new boolean[size];
+		Arrays.fill(all, true);
+		update(g, all, all);
+	}
+
+	private CrossChecks(CrossChecks from) {
+		lex = from.lex;
+		size = from.size;
+		right = from.right.clone();
+		down = from.down.clone();
+		rightPoints = from.rightPoints.clone();
+		downPoints = from.downPoints.clone();
+		anchors = from.anchors.clone();
+		values = from.values;
+	}
+
+	/**
+	 * These checks for g once the tiles in the rows and columns set in rows
+	 * and cols have changed: a copy, leaving these as they are for searches
+	 * still using them.
+	 */
+	CrossChecks updated(GameBoard g, boolean[] rows, boolean[] cols) {
+		CrossChecks next = new CrossChecks(this);
+		next.update(g, rows, cols);
+		return next;
+	}
+
+	/**
+	 * Works out again the squares in the rows and columns set in rows and
+	 * cols. Only while these checks are being made.
+	 */
+	private void update(GameBoard g, boolean[] rows, boolean[] cols) {
+		char[] after = new char[size];
+		for(int r=0; r<size; r++) {
+			for(int c=0; c<size; c++) {
+				if(!rows[r] && !cols[c]) {
+					continue;
+				}
+				int sq = r*size + c;
+				boolean empty = (g.getTile(r, c) == null);
+				anchors[sq] = (empty && (g.getTile(r-1, c) != null || g.getTile(r+1, c) != null
+						|| g.getTile(r, c-1) != null || g.getTile(r, c+1) != null));
+				if(cols[c]) {
+					right[sq] = (empty ? fill(g, r, c, 1, 0, after, rightPoints) : 0);
+				}
+				if(rows[r]) {
+					down[sq] = (empty ? fill(g, r, c, 0, 1, after, downPoints) : 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The words these checks were made with.
+	 */
+	Lexicon lexicon() {
+		return lex;
+	}
+
+	/**
+	 * The letters allowed on square (r, c) of a word going in direction d.
+	 */
+	int mask(Dir d, int r, int c) {
+		return (d == Dir.RIGHT ? right : down)[r*size + c];
+	}
+
+	/**
+	 * Whether (r, c) is empty and next to a tile.
+	 */
+	boolean isAnchor(int r, int c) {
+		return anchors[r*size + c];
+	}
+
+	/**
+	 * The points of the word made across a word going in direction d by
+	 * letter on square (r, c), or by a blank as that letter.
+	 */
+	int points(Dir d, int r, int c, char letter, boolean blank) {
+		return (d == Dir.RIGHT ? rightPoints : downPoints)[(r*size + c)*27 + (blank ? BLANK : letter - 'A')];
+	}
+
+	/**
+	 * Works out the letters that make a word with the tiles either side of
+	 * (r, c) along (dr, dc), and fills in the points of each. Returns the
+	 * letters.
+	 */
+	private int fill(GameBoard g, int r, int c, int dr, int dc, char[] after, int[] points) {
+		int b = 0;
+		int tilePoints = 0;
+		while(g.getTile(r - (b+1)*dr, c - (b+1)*dc) != null) {
+			tilePoints += g.getTile(r - (b+1)*dr, c - (b+1)*dc).pointValue();
+			b++;
+		}
+		int a = 0;
+		while(g.getTile(r + (a+1)*dr, c + (a+1)*dc) != null) {
+			Tile t = g.getTile(r + (a+1)*dr, c + (a+1)*dc);
+			after[a] = t.letter();
+			tilePoints += t.pointValue();
+			a++;
+		}
+		int base = (r*size + c)*27;
+		if(a == 0 && b == 0) {
+			Arrays.fill(points, base, base+27, 0);
+			return ALL;
+		}
+		int letterMult = 1;
+		int wordMult = 1;
+		switch(g.getMul(r, c)) {
+		case DL:
+			letterMult = 2;
+			break;
+		case TL:
+			letterMult = 3;
+			break;
+		case DW:
+			wordMult = 2;
+			break;
+		case TW:
+			wordMult = 3;
+			break;
+		case XX:
+			break;
+		}
+		for(int l=0; l<=BLANK; l++) {
+			points[base + l] = (tilePoints + values[l]*letterMult) * wordMult;
+		}
+		int node = lex.root();
+		for(int k=b; k>=1 && node != Lexicon.NONE; k--) {
+			node = lex.getNextLetter(node, g.getTile(r - k*dr, c - k*dc).letter());
+		}
+		if(node == Lexicon.NONE) {
+			return 0;
+		}
+		int mask = 0;
+		for(int m = lex.childMask(node); m != 0; m &= m-1) {
+			int l = Integer.numberOfTrailingZeros(m);
+			int n = lex.getNextLetter(node, (char)('A' + l));
+			for(int k=0; k<a && n != Lexicon.NONE; k++) {
+				n = lex.getNextLetter(n, after[k]);
+			}
+			if(n != Lexicon.NONE && lex.isEndOfWord(n)) {
+				mask |= 1 << l;
+			}
+		}
+		return mask;
+	}
+}
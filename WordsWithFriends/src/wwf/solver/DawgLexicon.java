@@ -0,0 +1,338 @@
+package wwf.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Minimized directed acyclic word graph. Any two trie nodes that accept exactly
+ * the same set of suffixes are merged into one, so common endings like -ING,
+ * -ED and -S are only stored once.
+ *
+ * The graph is kept in two int arrays instead of node objects:
+ *   nodes[2n]   = index of n's first edge
+ *   nodes[2n+1] = child mask (bit i set for a child on letter 'A'+i), plus
+ *                 END_OF_WORD if n ends a word
+ *   edges[e]    = target node
+ * Node n's edges are stored in letter order, so the edge for letter i is at
+ * nodes[2n] + (number of mask bits below bit i).
+ *
+ * Both arrays are held as IntBuffers so that a compiled image can be
+ * memory-mapped straight from disk (see write and map). Image layout, all
+ * big-endian ints:
+ *   magic, version, node count, edge count, CRC32 of payload,
+ *   source (2 ints, high first),
+ *   payload = nodes[0..2*node count) followed by edges[0..edge count)
+ * source identifies what the graph was compiled from (see
+ * Dictionary.saveCompiled), so that an image left over from other word
+ * lists is not taken for theirs; 0 if not known.
+ */
+public class DawgLexicon implements Lexicon {
+	public static final int IMAGE_MAGIC = 0x5757464C; // "WWFL"
+	public static final int IMAGE_VERSION = 3;
+	private static final int END_OF_WORD = 0x80000000;
+	private static final int HEADER_INTS = 7;
+	
+	private IntBuffer nodes;
+	private IntBuffer edges;
+	private int nodeCount;
+	// Read from the image header; 0 if not mapped from one
+	private long source = 0;
+
+	private DawgLexicon(IntBuffer nodes, IntBuffer edges) {
+		this.nodes = nodes;
+		this.edges = edges;
+		this.nodeCount = nodes.limit()/2;
+	}
+
+	/**
+	 * Collects the equivalence classes of a graph as it is minimized: two nodes
+	 * are equivalent if they agree on end-of-word and have the same letters
+	 * leading to the same classes. Classes must be registered children first.
+	 */
+	static class Registry {
+		private ArrayList<int[]> classEdges = new ArrayList<int[]>();
+		private ArrayList<Boolean> classEnds = new ArrayList<Boolean>();
+		private HashMap<String, Integer> classes = new HashMap<String, Integer>();
+		private StringBuilder sig = new StringBuilder();
+		
+		/**
+		 * Returns the class of a node with the given edges, each packed as
+		 * (target class << 5) | letter code, in letter order.
+		 */
+		int register(boolean endOfWord, int[] edges, int ct) {
+			sig.setLength(0);
+			sig.append(endOfWord ? '1' : '0');
+			for(int i=0; i<ct; i++) {
+				int packed = edges[i];
+				sig.append((char)(packed >>> 16)).append((char)packed);
+			}
+			String key = sig.toString();
+			Integer existing = classes.get(key);
+			if(existing != null) {
+				return existing;
+			}
+			int[] trimmed = new int[ct];
+			System.arraycopy(edges, 0, trimmed, 0, ct);
+			classEdges.add(trimmed);
+			classEnds.add(endOfWord);
+			classes.put(key, classEdges.size()-1);
+			return classEdges.size()-1;
+		}
+		
+		/**
+		 * Lays the classes reachable from rootClass out as a DawgLexicon.
+		 */
+		DawgLexicon toLexicon(int rootClass) {
+			classes = null;
+			// Renumber the classes depth-first from the root, so that a node
+			// and the nodes it leads to tend to sit close together in memory.
+			int classCount = classEdges.size();
+			int[] order = new int[classCount];
+			for(int i=0; i<classCount; i++) {
+				order[i] = -1;
+			}
+			int[] stack = new int[classCount];
+			int sp = 0;
+			int next = 0;
+			int edgeCount = 0;
+			int[] byNewId = new int[classCount];
+			stack[sp++] = rootClass;
+			order[rootClass] = next++;
+			while(sp > 0) {
+				int cls = stack[--sp];
+				byNewId[order[cls]] = cls;
+				int[] out = classEdges.get(cls);
+				edgeCount += out.length;
+				// Push in reverse so the lowest letter is numbered first
+				for(int i=out.length-1; i>=0; i--) {
+					int target = out[i] >>> 5;
+					if(order[target] < 0) {
+						order[target] = next++;
+						stack[sp++] = target;
+					}
+				}
+			}
+
+			int[] nodes = new int[next*2];
+			int[] edges = new int[edgeCount];
+			int e = 0;
+			for(int n=0; n<next; n++) {
+				int cls = byNewId[n];
+				int mask = (classEnds.get(cls) ? END_OF_WORD : 0);
+				nodes[2*n] = e;
+				for(int packed : classEdges.get(cls)) {
+					mask |= 1 << (packed & 31);
+					edges[e++] = order[packed >>> 5];
+				}
+				nodes[2*n+1] = mask;
+			}
+			return new DawgLexicon(IntBuffer.wrap(nodes), IntBuffer.wrap(edges));
+		}
+	}
+
+	/**
+	 * Writes this graph as a compiled image that map can load, recording
+	 * source as what it was compiled from.
+	 * 
+	 * Other dictionaries, in this process or others, may have f mapped, so
+	 * it is never written in place: the image goes to a new file beside it,
+	 * which is then renamed over f. Mappings of the old file carry on with
+	 * it until they are dropped.
+	 */
+	public void write(File f, long source) throws IOException {
+		int payloadInts = nodes.limit() + edges.limit();
+		ByteBuffer payload = ByteBuffer.allocate(payloadInts*4);
+		IntBuffer ib = payload.asIntBuffer();
+		for(int i=0; i<nodes.limit(); i++) {
+			ib.put(nodes.get(i));
+		}
+		for(int i=0; i<edges.limit(); i++) {
+			ib.put(edges.get(i));
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+		
+		File dir = f.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(f.getName(), ".tmp", dir);
+		boolean done = false;
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(IMAGE_MAGIC);
+				out.writeInt(IMAGE_VERSION);
+				out.writeInt(nodeCount);
+				out.writeInt(edges.limit());
+				out.writeInt((int)crc.getValue());
+				out.writeLong(source);
+				out.write(payload.array());
+			}
+			finally {
+				out.close();
+			}
+			// Replaces f in one step where the OS allows it. Where it does
+			// not (Windows), f has to go first, and cannot while it is mapped.
+			if(!tmp.renameTo(f) && !(f.delete() && tmp.renameTo(f))) {
+				throw new IOException("Could not replace " + f + " with the new image.");
+			}
+			done = true;
+		}
+		finally {
+			if(!done) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Maps a compiled image read-only. The graph is used in place, so nothing
+	 * is parsed or allocated per word, and every process mapping the same file
+	 * shares one copy of it in the OS page cache.
+	 */
+	public static DawgLexicon map(File f) throws IOException {
+		FileInputStream in = new FileInputStream(f);
+		MappedByteBuffer buf;
+		try {
+			FileChannel ch = in.getChannel();
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		finally {
+			// The mapping stays valid after the channel is closed
+			in.close();
+		}
+		if(buf.capacity() < HEADER_INTS*4) {
+			throw new IOException(f + " is not a compiled lexicon (too short).");
+		}
+		IntBuffer header = buf.asIntBuffer();
+		if(header.get(0) != IMAGE_MAGIC) {
+			throw new IOException(f + " is not a compiled lexicon (bad magic number).");
+		}
+		if(header.get(1) != IMAGE_VERSION) {
+			throw new IOException(f + " has lexicon version " + header.get(1) + ", expected " + IMAGE_VERSION + ".");
+		}
+		int nodeCt = header.get(2);
+		int edgeCt = header.get(3);
+		int checksum = header.get(4);
+		long payloadBytes = ((long)nodeCt*2 + edgeCt) * 4;
+		if(nodeCt < 1 || edgeCt < 0 || buf.capacity() != HEADER_INTS*4 + payloadBytes) {
+			throw new IOException(f + " is truncated or has a corrupt header.");
+		}
+		
+		buf.position(HEADER_INTS*4);
+		ByteBuffer payload = buf.slice();
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[64*1024];
+		while(payload.hasRemaining()) {
+			int len = Math.min(chunk.length, payload.remaining());
+			payload.get(chunk, 0, len);
+			crc.update(chunk, 0, len);
+		}
+		if((int)crc.getValue() != checksum) {
+			throw new IOException(f + " failed its checksum, recompile it.");
+		}
+		
+		payload.rewind();
+		IntBuffer all = payload.asIntBuffer();
+		all.limit(nodeCt*2);
+		IntBuffer nodeBuf = all.slice();
+		all.limit(nodeCt*2+edgeCt);
+		all.position(nodeCt*2);
+		IntBuffer edgeBuf = all.slice();
+		DawgLexicon lex = new DawgLexicon(nodeBuf, edgeBuf);
+		lex.source = ((long)header.get(5) << 32) | (header.get(6) & 0xFFFFFFFFL);
+		return lex;
+	}
+
+	/**
+	 * What the image this graph was mapped from was compiled from, as given
+	 * to write; 0 if not known.
+	 */
+	public long source() {
+		return source;
+	}
+
+	@Override
+	public int root() {
+		return 0;
+	}
+
+	@Override
+	public int getNextLetter(int node, char c) {
+		int cc = Character.toUpperCase(c) - 'A';
+		if(cc < 0 || cc >= 26) {
+			return NONE;
+		}
+		int mask = nodes.get(2*node+1);
+		int bit = 1 << cc;
+		if((mask & bit) == 0) {
+			return NONE;
+		}
+		return edges.get(nodes.get(2*node) + Integer.bitCount(mask & (bit-1)));
+	}
+
+	/**
+	 * The child on letter code code (0 for 'A'), or NONE. Codes go up to 26,
+	 * one past 'Z', for graphs over 27 symbols such as the GADDAG's.
+	 */
+	int child(int node, int code) {
+		int mask = nodes.get(2*node+1);
+		int bit = 1 << code;
+		if((mask & bit) == 0) {
+			return NONE;
+		}
+		return edges.get(nodes.get(2*node) + Integer.bitCount(mask & (bit-1)));
+	}
+
+	@Override
+	public boolean isEndOfWord(int node) {
+		return (nodes.get(2*node+1) & END_OF_WORD) != 0;
+	}
+
+	/**
+	 * The number of words in the graph, counting each node's words once.
+	 */
+	public int wordCount() {
+		return countWords(root(), new int[nodeCount]);
+	}
+
+	// below[node]: 1 + the words at or beneath node, or 0 if not counted yet
+	private int countWords(int node, int[] below) {
+		if(below[node] == 0) {
+			int n = (isEndOfWord(node) ? 1 : 0);
+			for(int m = childMask(node); m != 0; m &= m-1) {
+				n += countWords(child(node, Integer.numberOfTrailingZeros(m)), below);
+			}
+			below[node] = n + 1;
+		}
+		return below[node] - 1;
+	}
+
+	@Override
+	public int childMask(int node) {
+		return nodes.get(2*node+1) & ~END_OF_WORD;
+	}
+
+	@Override
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public int handleLimit() {
+		return nodeCount;
+	}
+
+	public int edgeCount() {
+		return edges.limit();
+	}
+}
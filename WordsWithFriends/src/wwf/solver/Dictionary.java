@@ -1,157 +1,907 @@
 package wwf.solver;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.zip.CRC32;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import wwf.solver.GameBoard.Dir;
 
 public class Dictionary {
-	private DictionaryNode root = new DictionaryNode();
-	private int wordCount = 0;
+	/**
+	 * How the word list is stored once compiled.
+	 */
+	public enum Backend {
+		DAWG,         // Minimized word graph - smallest, the default
+		DOUBLE_ARRAY, // Flat base/check arrays - fastest to walk
+		LOUDS,        // Succinct bit string - smallest trie, slower to walk
+		TRIE          // Plain DictionaryNode objects - for comparison only
+	}
+	
+	/**
+	 * How findMoves finds the words that fit each line of the board.
+	 */
+	public enum Strategy {
+		TRIE,   // Walk the word graph with the tray - best on open lines
+		INDEX,  // Intersect the PositionIndex bitsets of the board letters -
+		        // slower than TRIE overall, though it can win on a line
+		        // crowded with board letters
+		ANCHOR, // Build moves out from the squares next to the tiles, on the
+		        // word graph
+		GADDAG  // The same on a GADDAG - faster, but TRIE while words are
+		        // added or removed since the last rebuild
+	}
+	
+	// Words are collected by a LexiconBuilder while the dictionary is being
+	// filled, and compiled into the backend the first time it is queried.
+	private volatile LexiconBuilder pending;
+	// The words as last published. Queries take this once and use it
+	// throughout; changes publish a new snapshot rather than modifying it.
+	private volatile LexiconSnapshot snapshot;
+	// Held by changes (never by queries), so that they apply one at a time
+	private final Object writeLock = new Object();
+	// Set for the read-only views made by snapshot()
+	private boolean readOnly = false;
+	private Backend backend;
+	// The word lists the words came from, for the image's source
+	private ArrayList<String> wordLists;
+	// Done once the dictionary is filled; see loadInBackground. null if it
+	// was filled from the start
+	private Future<Dictionary> ready;
+	
+	public Dictionary() {
+		this(Backend.DAWG);
+	}
+	
+	public Dictionary(Backend backend) {
+		this.backend = backend;
+		this.pending = new LexiconBuilder();
+		this.wordLists = new ArrayList<String>();
+	}
+	
+	/**
+	 * A read-only view of s, for snapshot(). Nothing else is allocated.
+	 */
+	private Dictionary(Backend backend, LexiconSnapshot s) {
+		this.backend = backend;
+		this.snapshot = s;
+		this.readOnly = true;
+	}
+	
+	/**
+	 * The ready() of a dictionary that was filled from the start.
+	 */
+	private static class Filled implements Future<Dictionary> {
+		private Dictionary dict;
+		
+		Filled(Dictionary dict) {
+			this.dict = dict;
+		}
+		
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+		
+		@Override
+		public boolean isDone() {
+			return true;
+		}
+		
+		@Override
+		public Dictionary get() {
+			return dict;
+		}
+		
+		@Override
+		public Dictionary get(long timeout, TimeUnit unit) {
+			return dict;
+		}
+	}
+	
+	/**
+	 * Returns a dictionary straight away and fills it on a background thread:
+	 * from the compiled image if it loads, otherwise from the word lists, in
+	 * which case the image is written for next time. Queries made before
+	 * loading finishes wait for it; ready() gives access to the wait itself.
+	 * image may be null to always use the word lists.
+	 * 
+	 * The dictionary is ready as soon as its graph is. The same thread then
+	 * goes on to build the tables searches use; a search that needs one
+	 * before then builds it, or waits for it if it is being built.
+	 */
+	public static Dictionary loadInBackground(Backend backend, final File image, final String[] wordLists) {
+		final Dictionary dict = new Dictionary(backend);
+		final FutureTask<Dictionary> task = new FutureTask<Dictionary>(new Callable<Dictionary>() {
+			@Override
+			public Dictionary call() {
+				dict.fill(image, wordLists);
+				return dict;
+			}
+		});
+		dict.ready = task;
+		Runnable load = new Runnable() {
+			@Override
+			public void run() {
+				task.run();
+				LexiconSnapshot s = dict.snapshot;
+				if(s != null) {
+					s.buildTables();
+				}
+			}
+		};
+		Thread loader = new Thread(load, "Dictionary loader");
+		loader.setDaemon(true);
+		loader.start();
+		return dict;
+	}
+	
+	private void fill(File image, String[] wordLists) {
+		if(image != null && image.isFile()) {
+			try {
+				DawgLexicon lex = DawgLexicon.map(image);
+				if(lex.source() == fingerprint(wordLists)) {
+					snapshot = snapshotOf(lex, backend);
+					pending = null;
+					return;
+				}
+				System.out.println(image + " was compiled from other word lists, or they have changed since. Compiling it again.");
+			} catch (IOException e) {
+				System.out.println("Could not load " + image + ": " + e.getMessage());
+			}
+		}
+		for(String s : wordLists) {
+			try {
+				addWordList(s);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		compiled();
+		if(image != null) {
+			try {
+				writeImage(image);
+			} catch (IOException e) {
+				// Not fatal, the word lists will just be read again next time
+			}
+		}
+	}
+	
+	/**
+	 * Completes once the dictionary has been filled. Always complete unless
+	 * the dictionary came from loadInBackground.
+	 */
+	public Future<Dictionary> ready() {
+		return (ready == null ? new Filled(this) : ready);
+	}
+	
+	public boolean isReady() {
+		return ready == null || ready.isDone();
+	}
+	
+	private void awaitReady() {
+		if(ready == null) {
+			return;
+		}
+		try {
+			ready.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the dictionary to load.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Dictionary failed to load.", e.getCause());
+		}
+	}
+	
+	private void checkWritable() {
+		if(readOnly) {
+			throw new UnsupportedOperationException("This is a read-only snapshot of a dictionary.");
+		}
+	}
+	
+	/**
+	 * A read-only view of the words as they are now. Changes made to this
+	 * dictionary afterwards do not show in it. findMoves works on one of
+	 * these, so that every word it checks is checked against the same words.
+	 */
+	public Dictionary snapshot() {
+		if(readOnly) {
+			return this;
+		}
+		return new Dictionary(backend, current());
+	}
 	
+	/**
+	 * Adds a word. Characters other than letters are dropped, and adding a
+	 * word twice has no effect. Words go into an overlay on the compiled
+	 * graph, which takes microseconds
+	 * rather than a rebuild; see rebuild. The overlay is copied, changed and
+	 * published as a new snapshot, so queries already running are not
+	 * affected; the copy shares the overlay's nodes, so it costs no more
+	 * however many words have been added.
+	 * 
+	 * Returns the number of distinct words the dictionary had before, so a
+	 * word it already has is not counted. The words of the lists added while
+	 * filling it are only known once they are compiled, so the first addWord
+	 * compiles them, as the first query would.
+	 */
 	public int addWord(String word) throws IllegalArgumentException {
-		DictionaryNode dn = root;
-		for(int i=0; i<word.length(); i++) {
-			// Throw out characters which aren't letters, raise an alert
-			if(!Character.isLetter(word.charAt(i))) {
-				System.out.println("Warning: \"" + word + "\" added to dictionary with non-letter character \"" + word.charAt(i) + "\" removed.");
+		checkWritable();
+		current();
+		synchronized(writeLock) {
+			int count = snapshot.wordCount();
+			OverlayLexicon changed = snapshot.copyOverlay();
+			if(changed.addWord(word)) {
+				snapshot = snapshot.withOverlay(changed);
 			}
-			else {
-				if(i == word.length()-1) {
-					try {
-						dn.addLastLetter(word.charAt(i));
-					}
-					catch (Exception e) {
-						System.out.println("Word \"" + word + "\" attemped to be added to dictionary twice, was rejected.");
-					}
+			return count;
+		}
+	}
+	
+	/**
+	 * Removes a word, through the overlay like addWord. Returns false if it
+	 * was not a word.
+	 */
+	public boolean removeWord(String word) {
+		checkWritable();
+		current();
+		synchronized(writeLock) {
+			OverlayLexicon changed = snapshot.copyOverlay();
+			if(!changed.removeWord(word)) {
+				return false;
+			}
+			snapshot = snapshot.withOverlay(changed);
+			return true;
+		}
+	}
+	
+	/**
+	 * Builds a fresh graph with the overlay's words folded in. Lookups over a
+	 * large overlay are slower, and some search shortcuts (the anagram index,
+	 * hook tables and perfect hash) only cover the compiled words.
+	 * 
+	 * Queries carry on with the current words while the new graph and its
+	 * tables are built, and it replaces them in one step once complete.
+	 * Other changes wait for it.
+	 */
+	public void rebuild() {
+		checkWritable();
+		current();
+		synchronized(writeLock) {
+			LexiconSnapshot s = snapshot;
+			if(!s.overlaid()) {
+				return;
+			}
+			LexiconBuilder b = new LexiconBuilder();
+			b.addLexicon(s.lexicon());
+			LexiconSnapshot fresh = snapshotOf(b.build(), backend);
+			fresh.buildTables();
+			snapshot = fresh;
+		}
+	}
+	
+	/**
+	 * rebuild on a background thread.
+	 */
+	public Future<Dictionary> rebuildInBackground() {
+		checkWritable();
+		FutureTask<Dictionary> task = new FutureTask<Dictionary>(new Callable<Dictionary>() {
+			@Override
+			public Dictionary call() {
+				rebuild();
+				return Dictionary.this;
+			}
+		});
+		Thread builder = new Thread(task, "Dictionary rebuild");
+		builder.setDaemon(true);
+		builder.start();
+		return task;
+	}
+	
+	
+	private static void unpack(Lexicon lex, int node, DictionaryNode dn) {
+		for(int m = lex.childMask(node); m != 0; m &= m-1) {
+			char c = (char)('A' + Integer.numberOfTrailingZeros(m));
+			int next = lex.getNextLetter(node, c);
+			DictionaryNode child = dn.addLetter(c);
+			if(lex.isEndOfWord(next)) {
+				try {
+					dn.addLastLetter(c);
 				}
-				else {
-					dn = dn.addLetter(word.charAt(i));
+				catch (Exception e) {
+					// Cannot happen, the trie was empty
 				}
 			}
+			unpack(lex, next, child);
+		}
+	}
+	
+	/**
+	 * Compiles the words added so far into the backend. This otherwise happens
+	 * on the first query; call it up front to keep it out of query timings.
+	 */
+	public void compile() {
+		current();
+	}
+	
+	/**
+	 * Returns the current snapshot once the dictionary is ready, compiling
+	 * the words added while filling it first. Only that first compile locks.
+	 */
+	private LexiconSnapshot current() {
+		awaitReady();
+		if(pending != null) {
+			return compiled();
+		}
+		return snapshot;
+	}
+	
+	private LexiconSnapshot compiled() {
+		synchronized(writeLock) {
+			if(pending != null) {
+				snapshot = snapshotOf(pending.build(), backend);
+				pending = null;
+			}
+			return snapshot;
+		}
+	}
+	
+	/**
+	 * The dense, alphabetical numbering of this dictionary's compiled words
+	 * (words in the overlay are not numbered).
+	 */
+	public WordIds wordIds() {
+		return current().wordIds();
+	}
+	
+	private static LexiconSnapshot snapshotOf(DawgLexicon dawg, Backend backend) {
+		return new LexiconSnapshot(convert(dawg, backend), dawg);
+	}
+	
+	/**
+	 * Every backend is made from the minimized graph.
+	 */
+	private static Lexicon convert(DawgLexicon dawg, Backend backend) {
+		switch(backend) {
+		case DOUBLE_ARRAY:
+			return DoubleArrayLexicon.build(dawg);
+		case LOUDS:
+			return LoudsLexicon.build(dawg);
+		case TRIE:
+			DictionaryNode trie = new DictionaryNode();
+			unpack(dawg, dawg.root(), trie);
+			return new TrieLexicon(trie);
+		default:
+			return dawg;
 		}
-		return wordCount++;
 	}
 	
 	public static Dictionary makeDictionary(Dictionary dict, String dictfilename) throws IllegalArgumentException, IOException {
+		dict.checkWritable();
+		dict.awaitReady();
+		dict.addWordList(dictfilename);
+		return dict;
+	}
+	
+	/**
+	 * While filling, words go to pending. Once compiled, the list is added to
+	 * the current words in a fresh builder and published when complete.
+	 */
+	private void addWordList(String dictfilename) throws IOException {
 		long timetaken = System.currentTimeMillis();
 		System.out.println("Filling dictionary with " + dictfilename + "...");
-		String word;
-		InputStream is = dict.getClass().getResourceAsStream(dictfilename);
-		BufferedReader br = new BufferedReader(new InputStreamReader(is));
-		while((word = br.readLine()) != null) {
-			dict.addWord(word);
+		InputStream is = getClass().getResourceAsStream(dictfilename);
+		synchronized(writeLock) {
+			wordLists.add(dictfilename);
+			LexiconBuilder builder = pending;
+			if(builder == null) {
+				// Already compiled - start over from the current words
+				builder = new LexiconBuilder();
+				builder.addLexicon(snapshot.lexicon());
+			}
+			int stripped = builder.strippedCount();
+			builder.addWordList(is);
+			stripped = builder.strippedCount() - stripped;
+			if(stripped > 0) {
+				System.out.println("Warning: " + stripped + " words had non-letter characters removed.");
+			}
+			if(builder != pending) {
+				snapshot = snapshotOf(builder.build(), backend);
+			}
 		}
 		timetaken = System.currentTimeMillis() - timetaken;
 		System.out.println(String.format("Dictionary filled. Time: %.3f s", (double)timetaken/1000));
+	}
+	
+	/**
+	 * Writes the compiled word graph to f, so that later runs can use
+	 * loadCompiled instead of reading the word lists again. The image records
+	 * which word lists it was compiled from (see fingerprint), unless words
+	 * have been added or removed by hand since.
+	 */
+	public void saveCompiled(File f) throws IOException {
+		awaitReady();
+		writeImage(f);
+	}
+	
+	private void writeImage(File f) throws IOException {
+		LexiconSnapshot s = compiled();
+		long source = 0;
+		synchronized(writeLock) {
+			// Words changed by hand are not the words of any word lists
+			if(s.overlaid()) {
+				source = 0;
+			}
+			else if(!wordLists.isEmpty()) {
+				source = fingerprint(wordLists.toArray(new String[wordLists.size()]));
+			}
+			else if(s.base() instanceof DawgLexicon) {
+				// Loaded from an image, so from whatever that was from
+				source = ((DawgLexicon) s.base()).source();
+			}
+		}
+		Lexicon lex = s.lexicon();
+		if(!(lex instanceof DawgLexicon)) {
+			LexiconBuilder b = new LexiconBuilder();
+			b.addLexicon(lex);
+			lex = b.build();
+		}
+		((DawgLexicon) lex).write(f, source);
+	}
+	
+	/**
+	 * Identifies a set of word lists by their names and contents, so that an
+	 * image compiled from other lists, or from these before they were edited,
+	 * is not used for them. Never 0.
+	 */
+	static long fingerprint(String[] wordLists) {
+		CRC32 names = new CRC32();
+		CRC32 contents = new CRC32();
+		byte[] buf = new byte[64*1024];
+		for(String list : wordLists) {
+			names.update(list.getBytes());
+			names.update(0);
+			InputStream is = Dictionary.class.getResourceAsStream(list);
+			if(is == null) {
+				continue;
+			}
+			try {
+				int n;
+				while((n = is.read(buf)) > 0) {
+					contents.update(buf, 0, n);
+				}
+			} catch (IOException e) {
+				// Unreadable lists cannot be compiled either
+			} finally {
+				try {
+					is.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		long print = (names.getValue() << 32) | contents.getValue();
+		return (print == 0 ? 1 : print);
+	}
+	
+	/**
+	 * Makes a dictionary from an image written by saveCompiled (or by
+	 * LexiconCompiler). The image is memory-mapped rather than read, and used
+	 * directly by the DAWG backend; other backends are built from it.
+	 */
+	public static Dictionary loadCompiled(File f) throws IOException {
+		return loadCompiled(f, Backend.DAWG);
+	}
+	
+	public static Dictionary loadCompiled(File f, Backend backend) throws IOException {
+		Dictionary dict = new Dictionary(backend);
+		dict.snapshot = snapshotOf(DawgLexicon.map(f), backend);
+		dict.pending = null;
 		return dict;
 	}
 	
 	public boolean isWord(String s) {
-		String t = s.toUpperCase();
-		DictionaryNode dn = root;
-		for(int i = 0; i<t.length(); i++) {
-			dn = dn.getNextLetter(t.charAt(i));
-			if(dn == null) {
+		return isWord(current(), s);
+	}
+	
+	private static boolean isWord(LexiconSnapshot snap, String s) {
+		// Short words are looked up in the perfect hash, longer ones walked
+		long packed = PerfectWordHash.pack(s);
+		if(packed > 0 && !snap.overlaid()) {
+			return snap.wordHash().contains(packed);
+		}
+		Lexicon lex = snap.lexicon();
+		int n = lex.root();
+		for(int i = 0; i<s.length(); i++) {
+			n = lex.getNextLetter(n, s.charAt(i));
+			if(n == Lexicon.NONE) {
 				return false;
 			}
 		}
-		return dn.isEndOfWord();
+		return lex.isEndOfWord(n);
+	}
+	
+	/**
+	 * isWord for a word packed by PerfectWordHash.pack, which takes words of
+	 * up to PerfectWordHash.MAX_LETTERS letters. False for anything pack
+	 * could not have made: -1, or a longer len.
+	 */
+	public boolean isWord(long packed, int len) {
+		if(packed < 0 || len > PerfectWordHash.MAX_LETTERS) {
+			return false;
+		}
+		LexiconSnapshot snap = current();
+		if(!snap.overlaid()) {
+			return snap.wordHash().contains(packed);
+		}
+		Lexicon lex = snap.lexicon();
+		int n = lex.root();
+		for(int i=len-1; i>=0 && n != Lexicon.NONE; i--) {
+			n = lex.getNextLetter(n, (char)('A' - 1 + ((packed >>> (5*i)) & 31)));
+		}
+		return n != Lexicon.NONE && lex.isEndOfWord(n);
+	}
+	
+	/**
+	 * Letters that can go in front of word to make another word (bit i for
+	 * 'A'+i), or 0 if word is not a word.
+	 */
+	public int frontHooks(String word) {
+		LexiconSnapshot snap = current();
+		if(snap.overlaid()) {
+			char[] w = word.toCharArray();
+			int hooks = 0;
+			if(isWord(snap, word)) {
+				for(char c='A'; c<='Z'; c++) {
+					if(isFrontHook(snap, c, w, 0, w.length)) {
+						hooks |= 1 << (c - 'A');
+					}
+				}
+			}
+			return hooks;
+		}
+		int id = snap.wordIds().id(word);
+		return (id < 0 ? 0 : snap.hooks().frontHooks(id));
+	}
+	
+	/**
+	 * Letters that can go after word to make another word.
+	 */
+	public int backHooks(String word) {
+		LexiconSnapshot snap = current();
+		if(snap.overlaid()) {
+			Lexicon lex = snap.lexicon();
+			int n = lex.root();
+			for(int i=0; i<word.length() && n != Lexicon.NONE; i++) {
+				n = lex.getNextLetter(n, word.charAt(i));
+			}
+			return (n == Lexicon.NONE || !lex.isEndOfWord(n) ? 0 : HookTable.backHooks(lex, n));
+		}
+		int id = snap.wordIds().id(word);
+		return (id < 0 ? 0 : snap.hooks().backHooks(id));
+	}
+	
+	/**
+	 * Whether letter c followed by w[offset .. offset+length) is a word. One
+	 * table lookup if the letters in w are a word themselves (a single tile,
+	 * say, is not), otherwise one walk.
+	 */
+	public boolean isFrontHook(char c, char[] w, int offset, int length) {
+		return isFrontHook(current(), c, w, offset, length);
+	}
+	
+	private static boolean isFrontHook(LexiconSnapshot snap, char c, char[] w, int offset, int length) {
+		c = Character.toUpperCase(c);
+		int id = (snap.overlaid() ? -1 : snap.wordIds().id(w, offset, length));
+		if(id >= 0) {
+			return c >= 'A' && c <= 'Z' && (snap.hooks().frontHooks(id) & (1 << (c - 'A'))) != 0;
+		}
+		Lexicon lex = snap.lexicon();
+		int n = lex.getNextLetter(lex.root(), c);
+		for(int i=offset; i<offset+length && n != Lexicon.NONE; i++) {
+			n = lex.getNextLetter(n, w[i]);
+		}
+		return n != Lexicon.NONE && lex.isEndOfWord(n);
+	}
+	
+	/**
+	 * Whether w[offset .. offset+length) followed by letter c is a word.
+	 */
+	public boolean isBackHook(char[] w, int offset, int length, char c) {
+		c = Character.toUpperCase(c);
+		LexiconSnapshot snap = current();
+		int id = (snap.overlaid() ? -1 : snap.wordIds().id(w, offset, length));
+		if(id >= 0) {
+			return c >= 'A' && c <= 'Z' && (snap.hooks().backHooks(id) & (1 << (c - 'A'))) != 0;
+		}
+		Lexicon lex = snap.lexicon();
+		int n = lex.root();
+		for(int i=offset; i<offset+length && n != Lexicon.NONE; i++) {
+			n = lex.getNextLetter(n, w[i]);
+		}
+		if(n != Lexicon.NONE) {
+			n = lex.getNextLetter(n, c);
+		}
+		return n != Lexicon.NONE && lex.isEndOfWord(n);
+	}
+	
+	/**
+	 * Checks every word of the batch in one pass; WordBatch.isValid then
+	 * tells which were found. Returns the number that were not.
+	 */
+	public int checkWords(WordBatch batch) {
+		LexiconSnapshot snap = current();
+		return batch.check(snap.lexicon(), snap.overlaid() ? null : snap.wordHash(), false);
+	}
+	
+	/**
+	 * Whether every word of the batch is a word. Stops at the first that is
+	 * not.
+	 */
+	public boolean areWords(WordBatch batch) {
+		LexiconSnapshot snap = current();
+		return batch.check(snap.lexicon(), snap.overlaid() ? null : snap.wordHash(), true) == 0;
 	}
 	
 	public ArrayList<TilePlacement> findMoves(GameBoard g, String letterTray) {
+		return findMoves(g, letterTray, Strategy.TRIE);
+	}
+	
+	public ArrayList<TilePlacement> findMoves(GameBoard g, String letterTray, Strategy strategy) {
+		if(!readOnly) {
+			// Every word is checked against the words as they are now
+			return snapshot().findMoves(g, letterTray, strategy);
+		}
+		LineSearch search = new LineSearch(g, letterTray, strategy);
 		// List of moves which are valid
 		ArrayList<TilePlacement> moves = new ArrayList<TilePlacement>();
-		// Iterate over every square as a possible starting location
-		// RIGHTWARD DIRECTION CHECKS
-		for(int i=0; i<g.size(); i++) { // row
-			for(int j=0; j<g.size(); j++) { // col
-				// Only if not at rightmost square
-				// Only if there is no tile to the left of this starting location
-				if(j<g.size()-1 && g.getTile(i, j-1) == null) {
-					// Build up a restrictions string to find words that may fit here
-					int col = j;
-					int emptiesLeft = letterTray.length();
-					String restrictions = "";
-					String blanks = "";
-					while(col < g.size() && emptiesLeft >= 0) {
-						Tile t = g.getTile(i, col);
-						if(t!=null) {
-							restrictions += t.letter();
-							blanks += (t.isBlank() ? 'B' : '.');
-						}
-						else {
-							if(emptiesLeft > 0) {
-								restrictions += '.';
-								blanks += '.';
-							}
-							emptiesLeft--;
-						}
-						col++;
+		// Every row going right, then every column going down
+		for(Dir dir : new Dir[] {Dir.RIGHT, Dir.DOWN}) {
+			for(int i=0; i<g.size(); i++) {
+				moves.addAll(search.searchLine(dir, i));
+			}
+		}
+		return search.sorted(moves);
+	}
+	
+	/**
+	 * findMoves with the lines of the board searched in parallel on pool:
+	 * each row going right and each column going down is a task, and the
+	 * pool's threads take the next line as they finish one, so a few crowded
+	 * lines do not hold the rest up. Returns the same moves in the same order
+	 * as findMoves. The board is only read once the search starts, and must
+	 * not be changed until it returns.
+	 */
+	public ArrayList<TilePlacement> findMoves(GameBoard g, String letterTray, Strategy strategy, ExecutorService pool) {
+		if(!readOnly) {
+			return snapshot().findMoves(g, letterTray, strategy, pool);
+		}
+		final LineSearch search = new LineSearch(g, letterTray, strategy);
+		ArrayList<Future<ArrayList<TilePlacement>>> lines = new ArrayList<Future<ArrayList<TilePlacement>>>();
+		for(Dir dir : new Dir[] {Dir.RIGHT, Dir.DOWN}) {
+			for(int i=0; i<g.size(); i++) {
+				final Dir d = dir;
+				final int n = i;
+				lines.add(pool.submit(new Callable<ArrayList<TilePlacement>>() {
+					@Override
+					public ArrayList<TilePlacement> call() {
+						return search.searchLine(d, n);
 					}
-					// The words that may fit here
-					ArrayList<Word> fittingWords = findWordsRestricted(letterTray, restrictions, blanks);
-					// Now check if each one fits with any other words on the board it may have created
-					for(Word w : fittingWords) {
-						int pointVal = g.wordFits(w.word, i, j, Dir.RIGHT, w.blankmask, this);
-						if(pointVal >= 0) {
-							// It works!
-							moves.add(new TilePlacement(w, pointVal, i, j, Dir.RIGHT));
-						}
+				}));
+			}
+		}
+		// The lines' moves in the order findMoves finds them
+		ArrayList<TilePlacement> moves = new ArrayList<TilePlacement>();
+		try {
+			for(Future<ArrayList<TilePlacement>> line : lines) {
+				moves.addAll(line.get());
+			}
+		} catch (InterruptedException e) {
+			for(Future<ArrayList<TilePlacement>> line : lines) {
+				line.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while finding moves.", e);
+		} catch (ExecutionException e) {
+			for(Future<ArrayList<TilePlacement>> line : lines) {
+				line.cancel(true);
+			}
+			throw new IllegalStateException("Finding moves failed.", e.getCause());
+		}
+		return search.sorted(moves);
+	}
+	
+	/**
+	 * One findMoves search, a line of the board at a time. Everything the
+	 * lines share - the words, the tables built from them and the board's
+	 * cross-checks - is made ready up front and then only read, so lines can
+	 * be searched at the same time.
+	 */
+	private class LineSearch {
+		GameBoard g;
+		String letterTray;
+		Strategy strategy;
+		LexiconSnapshot snap;
+		CrossChecks checks;
+		
+		LineSearch(GameBoard g, String letterTray, Strategy strategy) {
+			this.g = g;
+			this.letterTray = letterTray;
+			snap = current();
+			// The GADDAG only has the compiled words
+			if(strategy == Strategy.GADDAG && snap.overlaid()) {
+				strategy = Strategy.TRIE;
+			}
+			this.strategy = strategy;
+			// Words made across are checked and scored from one table
+			checks = g.crossChecks(snap.lexicon());
+			// Tables the lines would otherwise each race to build
+			if(strategy == Strategy.GADDAG) {
+				snap.gaddag();
+			}
+			if(strategy == Strategy.INDEX) {
+				snap.positions();
+			}
+			if(strategy == Strategy.TRIE) {
+				snap.wordIds();
+				snap.subtrees();
+			}
+		}
+		
+		/**
+		 * The moves starting on row (or column) n going in direction dir, in
+		 * no particular order.
+		 */
+		ArrayList<TilePlacement> searchLine(Dir dir, int n) {
+			if(strategy == Strategy.ANCHOR) {
+				return new AnchorMoves(g, checks, snap.lexicon(), letterTray).searchLine(dir, n);
+			}
+			if(strategy == Strategy.GADDAG) {
+				return new GaddagMoves(g, checks, snap.gaddag(), letterTray).searchLine(dir, n);
+			}
+			ArrayList<TilePlacement> moves = new ArrayList<TilePlacement>();
+			// Iterate over every square of the line as a possible starting
+			// location
+			for(int k=0; k<g.size(); k++) {
+				int i = (dir == Dir.RIGHT ? n : k); // row
+				int j = (dir == Dir.RIGHT ? k : n); // col
+				String[] restrictions = restrictionsFrom(g, i, j, dir, letterTray.length());
+				if(restrictions == null) {
+					continue;
+				}
+				// The words that may fit here
+				ArrayList<Word> fittingWords = findWordsRestricted(letterTray, restrictions[0], restrictions[1], strategy);
+				// Now check if each one fits with any other words on the board it may have created
+				for(Word w : fittingWords) {
+					int pointVal = g.placementPoints(w.word, i, j, dir, w.blankmask, checks);
+					if(pointVal >= 0) {
+						// It works!
+						moves.add(new TilePlacement(w, pointVal, i, j, dir));
 					}
 				}
 			}
+			return moves;
 		}
-		// DOWNWARD DIRECTION CHECKS
-		for(int i=0; i<g.size(); i++) { // row
-			for(int j=0; j<g.size(); j++) { // col
-				// Only if not at bottom-most square
-				// Only if there is no tile above this starting location
-				if(i<g.size()-1 && g.getTile(i-1, j) == null) {
-					// Build up a restrictions string to find words that may fit here
-					int row = i;
-					int emptiesLeft = letterTray.length();
-					String restrictions = "";
-					String blanks = "";
-					while(row < g.size() && emptiesLeft >= 0) {
-						Tile t = g.getTile(row, j);
-						if(t!=null) {
-							restrictions += t.letter();
-							blanks += (t.isBlank() ? 'B' : '.');
-						}
-						else {
-							if(emptiesLeft > 0) {
-								restrictions += '.';
-								blanks += '.';
+		
+		/**
+		 * Sorts the moves of every line by point value. Moves worth the same
+		 * are kept in the order of a search square by square, row by row,
+		 * going right and then going down.
+		 */
+		ArrayList<TilePlacement> sorted(ArrayList<TilePlacement> moves) {
+			Collections.sort(moves, new MoveGenerator.ScanOrder(g, letterTray));
+			Collections.sort(moves);
+			return moves;
+		}
+	}
+	
+	/**
+	 * findMoves for several dictionaries in one search: the word graphs are
+	 * walked in lockstep, so each candidate word is found once along with
+	 * which of them have it. A move is returned if any dictionary accepts it
+	 * (main word and cross words), and TilePlacement.lexicons has bit i set
+	 * for each dicts[i] that does.
+	 */
+	public static ArrayList<TilePlacement> findMovesAcross(GameBoard g, String letterTray, Dictionary[] dicts) {
+		if(dicts.length == 0 || dicts.length > 32) {
+			throw new IllegalArgumentException("Between 1 and 32 dictionaries can be searched together.");
+		}
+		// Every dictionary pinned for the whole search
+		Dictionary[] views = new Dictionary[dicts.length];
+		LexiconSnapshot[] snaps = new LexiconSnapshot[dicts.length];
+		for(int k=0; k<dicts.length; k++) {
+			views[k] = dicts[k].snapshot();
+			snaps[k] = views[k].current();
+		}
+		ArrayList<TilePlacement> moves = new ArrayList<TilePlacement>();
+		WordBatch crossWords = new WordBatch();
+		char[] hookWord = new char[g.size()];
+		for(Dir dir : new Dir[] {Dir.RIGHT, Dir.DOWN}) {
+			for(int i=0; i<g.size(); i++) { // row
+				for(int j=0; j<g.size(); j++) { // col
+					String[] restrictions = restrictionsFrom(g, i, j, dir, letterTray.length());
+					if(restrictions == null) {
+						continue;
+					}
+					LockstepSearch search = new LockstepSearch(snaps, letterTray, restrictions[0], restrictions[1]);
+					search.search(0, 0L, false);
+					for(int w=0; w<search.results.size(); w++) {
+						Word word = search.results.get(w);
+						int accepted = 0;
+						int pointVal = -1;
+						// Cross words can still differ between dictionaries
+						for(int m = search.accepts.get(w); m != 0; m &= m-1) {
+							int k = Integer.numberOfTrailingZeros(m);
+							int pts = g.wordFits(word.word, i, j, dir, word.blankmask, views[k], crossWords, hookWord);
+							if(pts >= 0) {
+								accepted |= 1 << k;
+								pointVal = pts;
 							}
-							emptiesLeft--;
 						}
-						row++;
-					}
-					// The words that may fit here
-					ArrayList<Word> fittingWords = findWordsRestricted(letterTray, restrictions, blanks);
-					// Now check if each one fits with any other words on the board it may have created
-					for(Word w : fittingWords) {
-						int pointVal = g.wordFits(w.word, i, j, Dir.DOWN, w.blankmask, this);
-						if(pointVal >= 0) {
-							// It works!
-							moves.add(new TilePlacement(w, pointVal, i, j, Dir.DOWN));
+						if(accepted != 0) {
+							TilePlacement t = new TilePlacement(word, pointVal, i, j, dir);
+							t.lexicons = accepted;
+							moves.add(t);
 						}
 					}
 				}
 			}
 		}
-		
-		// Sort by pointvalue
 		Collections.sort(moves);
 		return moves;
 	}
 	
+	/**
+	 * The restrictions and blanks strings (see findWordsRestricted) for words
+	 * starting at (r, c) going in direction d, with tiles tray tiles to
+	 * place. null if no word can start there: the square before it holds a
+	 * tile, or it is the last square of the line.
+	 */
+	private static String[] restrictionsFrom(GameBoard g, int r, int c, Dir d, int tiles) {
+		int dr = (d == Dir.DOWN ? 1 : 0);
+		int dc = 1 - dr;
+		// Only if not at the last square, and there is no tile before it
+		if((d == Dir.DOWN ? r : c) >= g.size()-1 || g.getTile(r-dr, c-dc) != null) {
+			return null;
+		}
+		// Build up a restrictions string to find words that may fit here
+		int emptiesLeft = tiles;
+		String restrictions = "";
+		String blanks = "";
+		while(r < g.size() && c < g.size() && emptiesLeft >= 0) {
+			Tile t = g.getTile(r, c);
+			if(t!=null) {
+				restrictions += t.letter();
+				blanks += (t.isBlank() ? 'B' : '.');
+			}
+			else {
+				if(emptiesLeft > 0) {
+					restrictions += '.';
+					blanks += '.';
+				}
+				emptiesLeft--;
+			}
+			r += dr;
+			c += dc;
+		}
+		return new String[] {restrictions, blanks};
+	}
+	
 	/**
 	 * Restrictions are of the form "BR..KS", where any [A-Z] represents a letter
 	 * that must be present in the word at that location, and a . represents a
@@ -164,73 +914,479 @@ public class Dictionary {
 	 * letters can fill in the blanks in the restrictions.
 	 * Does not find one-letter words.
 	 */
-	private ArrayList<Word> findWordsRestricted(String letters, String restrictions, String blanks) {
-		return findWordsRestricted1(letters, restrictions, blanks, root, null, new HashSet<Word>(), false);
+	private ArrayList<Word> findWordsRestricted(String letters, String restrictions, String blanks, Strategy strategy) {
+		LexiconSnapshot snap = current();
+		if(strategy == Strategy.INDEX) {
+			return findWordsIndexed(snap, letters, restrictions, blanks);
+		}
+		Lexicon lex = snap.lexicon();
+		RestrictedSearch search = new RestrictedSearch(lex, snap.wordIds(), snap.subtrees(), letters, restrictions, blanks);
+		if(snap.overlaid()) {
+			search.overlay = snap.overlay();
+			search.baseLimit = search.overlay.baseLimit();
+		}
+		search.search(lex.root(), 0, 0, 0L, false);
+		return search.results;
+	}
+	
+	/**
+	 * findWordsRestricted by the PositionIndex. The index only has the
+	 * compiled words, so with an overlay the words it removed are dropped and
+	 * the ones it added are tried as well.
+	 */
+	private static ArrayList<Word> findWordsIndexed(LexiconSnapshot snap, String letters, String restrictions, String blanks) {
+		PositionIndex.Query q = snap.positions().query(letters, restrictions, blanks);
+		ArrayList<Word> found = q.matchAll();
+		if(!snap.overlaid()) {
+			return found;
+		}
+		ArrayList<Word> words = new ArrayList<Word>(found.size());
+		for(Word w : found) {
+			if(isWord(snap, w.word)) {
+				words.add(w);
+			}
+		}
+		found.clear();
+		for(String extra : snap.overlay().addedWords()) {
+			if(isWord(snap, extra)) {
+				q.tryWord(extra.toCharArray(), extra.length());
+			}
+		}
+		words.addAll(found);
+		return words;
+	}
+	
+	/**
+	 * The tray and the line of one word search, and the pruning they allow
+	 * (see RestrictedSearch): what is left of the tray as letters are put
+	 * down, where a word may end, and the board letters still to come.
+	 * Shared by the single-graph and lockstep searches.
+	 */
+	private static class LineState {
+		String restrictions;
+		String blanks;
+		// Bit e set if a word may end at position e
+		long allowedEnds = 0;
+		char[] tray;
+		boolean[] used;
+		// Tray letters not yet used, by letter, and blanks not yet used
+		int[] trayLeft = new int[26];
+		int blanksLeft = 0;
+		// fixedAfter[d][l]: board letters l in the restrictions from d on
+		int[][] fixedAfter;
+		
+		LineState(String letters, String restrictions, String blanks) {
+			this.tray = letters.toUpperCase().toCharArray();
+			this.used = new boolean[tray.length];
+			this.restrictions = restrictions;
+			this.blanks = blanks;
+			for(char c : tray) {
+				if(c >= 'A' && c <= 'Z') {
+					trayLeft[c - 'A']++;
+				}
+				else if(c == '*') {
+					blanksLeft++;
+				}
+			}
+			fixedAfter = new int[restrictions.length()+1][26];
+			for(int d=restrictions.length()-1; d>=0; d--) {
+				fixedAfter[d] = fixedAfter[d+1].clone();
+				char c = Character.toUpperCase(restrictions.charAt(d));
+				if(c >= 'A' && c <= 'Z') {
+					fixedAfter[d][c - 'A']++;
+				}
+			}
+			boolean tileSquare = false;
+			for(int e=0; e<restrictions.length() && e<64; e++) {
+				tileSquare |= !Character.isLetter(restrictions.charAt(e));
+				if(e >= 1 && tileSquare && (e+1 == restrictions.length() || !Character.isLetter(restrictions.charAt(e+1)))) {
+					allowedEnds |= 1L << e;
+				}
+			}
+		}
+		
+		/**
+		 * Whether any word through node, at position d, ends where allowed.
+		 * Nodes from limit on (an overlay's) are not known, so always may.
+		 */
+		boolean canEnd(SubtreeInfo info, int limit, int node, int d) {
+			if(node >= limit) {
+				return true;
+			}
+			return ((info.lengths(node) << d) & allowedEnds) != 0;
+		}
+		
+		/**
+		 * Whether what is left of the tray, with the board letters after
+		 * position d, covers the letters every word through node still needs.
+		 * Letters that are short have to come from blanks.
+		 */
+		boolean canFill(SubtreeInfo info, int limit, int node, int d) {
+			if(node >= limit) {
+				return true;
+			}
+			int once = info.needOnce(node);
+			if(once == 0) {
+				return true;
+			}
+			int twice = info.needTwice(node);
+			int[] fixed = fixedAfter[d+1];
+			int missing = 0;
+			for(int m = once; m != 0; m &= m-1) {
+				int l = Integer.numberOfTrailingZeros(m);
+				int want = ((twice & (1 << l)) != 0 ? 2 : 1);
+				int have = trayLeft[l] + fixed[l];
+				if(have < want) {
+					missing += want - have;
+				}
+			}
+			return missing <= blanksLeft;
+		}
+		
+		/**
+		 * Whether a word ending at position d would run into a board letter.
+		 */
+		boolean blockedAfter(int d) {
+			return d+1 < restrictions.length() && Character.isLetter(restrictions.charAt(d+1));
+		}
+		
+		/**
+		 * The blank mask of a word of d+1 letters with blanks blankBits.
+		 */
+		static String mask(int d, long blankBits) {
+			char[] mask = new char[d+1];
+			for(int i=0; i<=d; i++) {
+				mask[i] = ((blankBits & (1L << i)) != 0 ? 'B' : '.');
+			}
+			return new String(mask);
+		}
 	}
 	
-	private ArrayList<Word> findWordsRestricted1(String letters, String restrictions, String blanks, DictionaryNode n, Word wordSoFar, HashSet<Word> members, boolean anyTileUsed) {
+	/**
+	 * State of one findWordsRestricted search. The word so far is kept in a
+	 * char array and its blanks as bits, and a word found is known by its id
+	 * and blank bits, so nothing is allocated until a new word is found.
+	 * 
+	 * A letter is only tried if some word below it can end on a square where
+	 * a word may end: not before the first tile from the tray, and not right
+	 * before a board letter. Nor is it tried if the words below it all need
+	 * letters that the rest of the tray, the blanks and the board letters
+	 * further on could not provide between them.
+	 * 
+	 * With an overlay, ids and subtree facts are only known for base nodes.
+	 * Nodes the overlay changed are never pruned, and words ending on them
+	 * are looked up by id.
+	 */
+	private static class RestrictedSearch {
+		Lexicon lex;
+		WordIds ids;
+		SubtreeInfo subtrees;
+		OverlayLexicon overlay;
+		int baseLimit = Integer.MAX_VALUE;
+		LineState line;
+		char[] word;
+		// (id << 32) | blank bits of each word found
+		HashSet<Long> members = new HashSet<Long>();
 		ArrayList<Word> results = new ArrayList<Word>();
-		if(restrictions.length() == 0) {
-			return results;
-		}
-		if(Character.isLetter(restrictions.charAt(0))) {
-			DictionaryNode next = n.getNextLetter(restrictions.charAt(0));
-			if(next != null) {
-				Word newWordSoFar = new Word(wordSoFar);
-				newWordSoFar.addLetter(restrictions.charAt(0), blanks.charAt(0) == 'B');
-				// If this path represents a new word which is 2 or more letters long, and at least 1 tile was placed
-				if(newWordSoFar.length() >= 2 && next.isEndOfWord() && !members.contains(newWordSoFar) && anyTileUsed) {
-					// If the next restriction is a defined tile, the word cannot fit there
-					if(!(restrictions.length() >= 2 && Character.isLetter(restrictions.charAt(1)))) {
-						results.add(newWordSoFar);
-						members.add(newWordSoFar);
+		
+		RestrictedSearch(Lexicon lex, WordIds ids, SubtreeInfo subtrees, String letters, String restrictions, String blanks) {
+			this.lex = lex;
+			this.ids = ids;
+			this.subtrees = subtrees;
+			this.line = new LineState(letters, restrictions, blanks);
+			this.word = new char[restrictions.length()];
+		}
+		
+		boolean canEnd(int node, int d) {
+			return line.canEnd(subtrees, baseLimit, node, d);
+		}
+		
+		boolean canFill(int node, int d) {
+			return line.canFill(subtrees, baseLimit, node, d);
+		}
+		
+		/**
+		 * Extends the word at position d, from node n, whose first word has id
+		 * base. blankBits marks the blanks among the first d letters.
+		 */
+		void search(int n, int base, int d, long blankBits, boolean anyTileUsed) {
+			if(d == line.restrictions.length()) {
+				return;
+			}
+			if(Character.isLetter(line.restrictions.charAt(d))) {
+				char r = Character.toUpperCase(line.restrictions.charAt(d));
+				int next = lex.getNextLetter(n, r);
+				if(next != Lexicon.NONE && canEnd(next, d) && canFill(next, d)) {
+					long bits = blankBits | (line.blanks.charAt(d) == 'B' ? 1L << d : 0);
+					int nextBase = step(n, base, r);
+					word[d] = r;
+					// Only if at least 1 tile was placed
+					if(anyTileUsed) {
+						found(next, nextBase, d, r, bits);
 					}
+					search(next, nextBase, d+1, bits, anyTileUsed);
 				}
-				results.addAll(findWordsRestricted1(letters, restrictions.substring(1), blanks.substring(1), next, newWordSoFar, members, anyTileUsed));
-			}
-		}
-		else {
-			// the next letter can be any one of these letters
-			for(int i=0; i<letters.length(); i++) {
-				if(Character.isLetter(letters.charAt(i))) {
-					DictionaryNode next = n.getNextLetter(letters.charAt(i));
-					if(next != null) {
-						Word newWordSoFar = new Word(wordSoFar);
-						newWordSoFar.addLetter(letters.charAt(i), false);
-						// If this path represents a new word which is 2 or more letters long
-						if(newWordSoFar.length() >= 2 && next.isEndOfWord() && !members.contains(newWordSoFar)) {
-							// If the next restriction is a defined tile, the word cannot fit there
-							if(!(restrictions.length() >= 2 && Character.isLetter(restrictions.charAt(1)))) {
-								results.add(newWordSoFar);
-								members.add(newWordSoFar);
+			}
+			else {
+				// the next letter can be any one of these letters. Only letters
+				// with a child here are worth trying, and a letter that appears
+				// twice in the tray would only find the same words again.
+				int children = lex.childMask(n);
+				int lettersSeen = 0;
+				boolean blankSeen = false;
+				for(int i=0; i<line.tray.length; i++) {
+					if(line.used[i]) {
+						continue;
+					}
+					char choice = line.tray[i];
+					if(choice >= 'A' && choice <= 'Z') {
+						int bit = 1 << (choice - 'A');
+						if((lettersSeen & bit) != 0) {
+							continue;
+						}
+						lettersSeen |= bit;
+						if((children & bit) != 0) {
+							int next = lex.getNextLetter(n, choice);
+							if(!canEnd(next, d)) {
+								continue;
+							}
+							line.used[i] = true;
+							line.trayLeft[choice - 'A']--;
+							if(canFill(next, d)) {
+								int nextBase = step(n, base, choice);
+								found(next, nextBase, d, choice, blankBits);
+								search(next, nextBase, d+1, blankBits, true);
+							}
+							line.used[i] = false;
+							line.trayLeft[choice - 'A']++;
+						}
+					}
+					else if(choice == '*' && !blankSeen) { // Blank tile
+						blankSeen = true;
+						long bits = blankBits | (1L << d);
+						line.used[i] = true;
+						line.blanksLeft--;
+						for(int m = children; m != 0; m &= m-1) {
+							char c = (char)('A' + Integer.numberOfTrailingZeros(m));
+							int next = lex.getNextLetter(n, c);
+							if(!canEnd(next, d) || !canFill(next, d)) {
+								continue;
 							}
+							int nextBase = step(n, base, c);
+							found(next, nextBase, d, c, bits);
+							search(next, nextBase, d+1, bits, true);
 						}
-						String newLetterSet = letters.substring(0,i) + letters.substring(i+1);
-						results.addAll(findWordsRestricted1(newLetterSet, restrictions.substring(1), blanks.substring(1), next, newWordSoFar, members, true));
+						line.used[i] = false;
+						line.blanksLeft++;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * The id of the first word below n's child on c, given that of the
+		 * first word below n. -1 if that is not known (within the overlay).
+		 */
+		int step(int n, int base, char c) {
+			if(base < 0) {
+				return -1;
+			}
+			if(n >= baseLimit) {
+				int b = overlay.baseOf(n);
+				if(b == Lexicon.NONE || (overlay.base().childMask(b) & (1 << (c - 'A'))) == 0) {
+					return -1;
+				}
+				n = b;
+			}
+			return base + ids.offset(n, c);
+		}
+		
+		/**
+		 * Letter c has just been put at position d, reaching node next.
+		 */
+		void found(int next, int id, int d, char c, long blankBits) {
+			word[d] = c;
+			// If this path represents a word which is 2 or more letters long
+			if(d < 1 || !lex.isEndOfWord(next)) {
+				return;
+			}
+			// If the next restriction is a defined tile, the word cannot fit there
+			if(line.blockedAfter(d)) {
+				return;
+			}
+			if(next >= baseLimit) {
+				// Compiled words keep their ids, added ones follow them
+				id = ids.id(word, 0, d+1);
+				if(id < 0) {
+					id = ids.wordCount() + overlay.addedIndex(word, 0, d+1);
+				}
+			}
+			if(members.add(((long)id << 32) | blankBits)) {
+				results.add(new Word(new String(word, 0, d+1), LineState.mask(d, blankBits)));
+			}
+		}
+	}
+	
+	/**
+	 * The search of RestrictedSearch over several word graphs at once, as if
+	 * over their product: the path is followed in every graph that still has it, and a
+	 * letter is tried if any of them has it. A graph drops out where its
+	 * path ends or its subtree cannot fit, and the search stops where all
+	 * have. Each word found comes with the graphs it is a word in.
+	 */
+	private static class LockstepSearch {
+		Lexicon[] lexes;
+		SubtreeInfo[] infos;
+		int[] limits;
+		// nodes[d][k]: node in graph k after d letters, or NONE
+		int[][] nodes;
+		LineState line;
+		char[] word;
+		ArrayList<Word> results = new ArrayList<Word>();
+		// Graphs in which results.get(i) is a word
+		ArrayList<Integer> accepts = new ArrayList<Integer>();
+		HashSet<Word> seen = new HashSet<Word>();
+		
+		LockstepSearch(LexiconSnapshot[] snaps, String letters, String restrictions, String blanks) {
+			int count = snaps.length;
+			line = new LineState(letters, restrictions, blanks);
+			word = new char[restrictions.length()];
+			lexes = new Lexicon[count];
+			infos = new SubtreeInfo[count];
+			limits = new int[count];
+			nodes = new int[restrictions.length()+1][count];
+			for(int k=0; k<count; k++) {
+				lexes[k] = snaps[k].lexicon();
+				infos[k] = snaps[k].subtrees();
+				limits[k] = (snaps[k].overlaid() ? snaps[k].overlay().baseLimit() : Integer.MAX_VALUE);
+				nodes[0][k] = lexes[k].root();
+			}
+		}
+		
+		/**
+		 * Moves every graph still on the path at position d along letter c
+		 * into nodes[d+1]. Returns the graphs that are still worth following.
+		 */
+		int step(int d, char c) {
+			int alive = 0;
+			for(int k=0; k<lexes.length; k++) {
+				int n = nodes[d][k];
+				int next = (n == Lexicon.NONE ? Lexicon.NONE : lexes[k].getNextLetter(n, c));
+				if(next != Lexicon.NONE && (!line.canEnd(infos[k], limits[k], next, d) || !line.canFill(infos[k], limits[k], next, d))) {
+					next = Lexicon.NONE;
+				}
+				nodes[d+1][k] = next;
+				if(next != Lexicon.NONE) {
+					alive |= 1 << k;
+				}
+			}
+			return alive;
+		}
+		
+		int childMask(int d) {
+			int children = 0;
+			for(int k=0; k<lexes.length; k++) {
+				if(nodes[d][k] != Lexicon.NONE) {
+					children |= lexes[k].childMask(nodes[d][k]);
+				}
+			}
+			return children;
+		}
+		
+		/**
+		 * Extends the word at position d; the graphs' nodes for the first d
+		 * letters are in nodes[d].
+		 */
+		void search(int d, long blankBits, boolean anyTileUsed) {
+			if(d == line.restrictions.length()) {
+				return;
+			}
+			if(Character.isLetter(line.restrictions.charAt(d))) {
+				char r = Character.toUpperCase(line.restrictions.charAt(d));
+				if(step(d, r) != 0) {
+					long bits = blankBits | (line.blanks.charAt(d) == 'B' ? 1L << d : 0);
+					word[d] = r;
+					// Only if at least 1 tile was placed
+					if(anyTileUsed) {
+						found(d, r, bits);
 					}
+					search(d+1, bits, anyTileUsed);
 				}
-				else if(letters.charAt(i) == '*') { // Blank tile
-					for(char c = 'A'; c <= 'Z'; c++) {
-						DictionaryNode next = n.getNextLetter(c);
-						if(next != null) {
-							Word newWordSoFar = new Word(wordSoFar);
-							newWordSoFar.addLetter(c, true);
-							// If this path represents a new word which is 2 or more letters long
-							if(newWordSoFar.length() >= 2 && next.isEndOfWord() && !members.contains(newWordSoFar)) {
-								// If the next restriction is a defined tile, the word cannot fit there
-								if(!(restrictions.length() >= 2 && Character.isLetter(restrictions.charAt(1)))) {
-									results.add(newWordSoFar);
-									members.add(newWordSoFar);
-								}
+			}
+			else {
+				int children = childMask(d);
+				int lettersSeen = 0;
+				boolean blankSeen = false;
+				for(int i=0; i<line.tray.length; i++) {
+					if(line.used[i]) {
+						continue;
+					}
+					char choice = line.tray[i];
+					if(choice >= 'A' && choice <= 'Z') {
+						int bit = 1 << (choice - 'A');
+						if((lettersSeen & bit) != 0) {
+							continue;
+						}
+						lettersSeen |= bit;
+						if((children & bit) != 0) {
+							line.used[i] = true;
+							line.trayLeft[choice - 'A']--;
+							if(step(d, choice) != 0) {
+								found(d, choice, blankBits);
+								search(d+1, blankBits, true);
 							}
-							String newLetterSet = letters.substring(0,i) + letters.substring(i+1);
-							results.addAll(findWordsRestricted1(newLetterSet, restrictions.substring(1), blanks.substring(1), next, newWordSoFar, members, true));
+							line.used[i] = false;
+							line.trayLeft[choice - 'A']++;
 						}
 					}
+					else if(choice == '*' && !blankSeen) { // Blank tile
+						blankSeen = true;
+						long bits = blankBits | (1L << d);
+						line.used[i] = true;
+						line.blanksLeft--;
+						for(int m = children; m != 0; m &= m-1) {
+							char c = (char)('A' + Integer.numberOfTrailingZeros(m));
+							if(step(d, c) != 0) {
+								found(d, c, bits);
+								search(d+1, bits, true);
+							}
+						}
+						line.used[i] = false;
+						line.blanksLeft++;
+					}
 				}
 			}
 		}
-		return results;
+		
+		/**
+		 * Letter c has just been put at position d; the graphs' nodes are in
+		 * nodes[d+1].
+		 */
+		void found(int d, char c, long blankBits) {
+			word[d] = c;
+			if(d < 1) {
+				return;
+			}
+			// If the next restriction is a defined tile, the word cannot fit there
+			if(line.blockedAfter(d)) {
+				return;
+			}
+			int accepted = 0;
+			for(int k=0; k<lexes.length; k++) {
+				int n = nodes[d+1][k];
+				if(n != Lexicon.NONE && lexes[k].isEndOfWord(n)) {
+					accepted |= 1 << k;
+				}
+			}
+			if(accepted == 0) {
+				return;
+			}
+			Word w = new Word(new String(word, 0, d+1), LineState.mask(d, blankBits));
+			if(seen.add(w)) {
+				results.add(w);
+				accepts.add(accepted);
+			}
+		}
 	}
 	
 	/**
@@ -276,50 +1432,132 @@ public class Dictionary {
 		return moves;
 	}
 	
+	/**
+	 * Every word that can be made from some of the letters, with each way of
+	 * using the blanks ('*'), in the order of a walk down the trie trying the
+	 * letters in tray order (see TrayOrder).
+	 */
 	public ArrayList<Word> findWords(String letters) {
-		// The "special" character '*' indicates a wildcard, any letter
-		return findWords1(letters, root, null);
-	}
-	
-	private ArrayList<Word> findWords1(String letters, DictionaryNode node, Word wordSoFar) {
-		ArrayList<Word> matches = new ArrayList<Word>();
-		HashSet<Character> lettersSeen = new HashSet<Character>();
-		String avail = letters.toUpperCase();
-		// Perform a depth-first search on the dictionary using recursion.
-		// If node is marked as end of word, then the wordSoFar is a match.
-		if(node.isEndOfWord()) {
-			matches.add(wordSoFar);
-		}
-		for(int i=0; i<avail.length(); i++) {
-			char choice = avail.charAt(i);
-				// Don't look at repeat letters (same path down trie)
-				if(!lettersSeen.contains(choice)) {
-					lettersSeen.add(choice);
-					String nowAvail = avail.substring(0,i) + avail.substring(i+1);
-					if(choice == '*') {
-						for(choice = 'A'; choice <= 'Z'; choice++) {
-							DictionaryNode nextNode = node.getNextLetter(choice);
-							// Base case: no match for chosen letter
-							// Recursive case: match exists for chosen letter
-							if(nextNode != null) {
-								Word newWordSoFar = new Word(wordSoFar);
-								newWordSoFar.addLetter(choice, true);
-								matches.addAll(findWords1(nowAvail, nextNode, newWordSoFar));
-							}
-						}
-					}
-					else {
-						DictionaryNode nextNode = node.getNextLetter(choice);
-						// Base case: no match for chosen letter
-						// Recursive case: match exists for chosen letter
-						if(nextNode != null) {
-							Word newWordSoFar = new Word(wordSoFar);
-							newWordSoFar.addLetter(choice, false);
-							matches.addAll(findWords1(nowAvail, nextNode, newWordSoFar));
-						}
-					}
+		LexiconSnapshot snap = current();
+		ArrayList<Word> words = withOverlay(snap, snap.anagrams().subAnagrams(letters), letters, false);
+		Collections.sort(words, new TrayOrder(letters));
+		return words;
+	}
+	
+	/**
+	 * Every word that uses all of the letters (a bingo, for a full tray).
+	 */
+	public ArrayList<Word> findAnagrams(String letters) {
+		LexiconSnapshot snap = current();
+		return withOverlay(snap, snap.anagrams().anagrams(letters), letters, true);
+	}
+	
+	/**
+	 * Passes each word that matches pattern to listener as it is found, in
+	 * alphabetical order, until the listener returns false.
+	 */
+	public void findMatching(WordPattern pattern, WordPattern.Listener listener) {
+		pattern.search(current(), listener);
+	}
+	
+	/**
+	 * Every word that matches pattern, in alphabetical order.
+	 */
+	public ArrayList<String> findMatching(WordPattern pattern) {
+		final ArrayList<String> words = new ArrayList<String>();
+		findMatching(pattern, new WordPattern.Listener() {
+			@Override
+			public boolean found(String word) {
+				words.add(word);
+				return true;
+			}
+		});
+		return words;
+	}
+	
+	/**
+	 * The anagram index only knows the compiled words: drop those the overlay
+	 * removed, and add the ways to make the words it added.
+	 */
+	private static ArrayList<Word> withOverlay(LexiconSnapshot snap, ArrayList<Word> found, String letters, boolean useAll) {
+		if(!snap.overlaid()) {
+			return found;
+		}
+		ArrayList<Word> words = new ArrayList<Word>(found.size());
+		for(Word w : found) {
+			if(isWord(snap, w.word)) {
+				words.add(w);
+			}
+		}
+		for(String extra : snap.overlay().addedWords()) {
+			if(isWord(snap, extra)) {
+				snap.anagrams().addWays(extra, letters, useAll, words);
+			}
+		}
+		Collections.sort(words, ALPHABETICAL);
+		return words;
+	}
+	
+	// Order of the anagram index: by word, then by blank positions read as
+	// bits (position i as bit i)
+	private static final Comparator<Word> ALPHABETICAL = new Comparator<Word>() {
+		@Override
+		public int compare(Word a, Word b) {
+			int c = a.word.compareTo(b.word);
+			for(int i=a.blankmask.length()-1; c == 0 && i>=0; i--) {
+				c = a.blankmask.charAt(i) - b.blankmask.charAt(i);
+			}
+			return c;
+		}
+	};
+	
+	/**
+	 * The order in which a depth-first walk down the trie finds words when it
+	 * tries the tray's letters in tray order, a repeated letter only once: a
+	 * word comes before the longer words it starts, and at the first letter
+	 * where two words differ, the one whose tile is earlier in what is left
+	 * of the tray comes first. A blank's letters are tried A to Z at the
+	 * blank's place.
+	 */
+	static class TrayOrder implements Comparator<Word> {
+		private char[] tray;
+		private boolean[] used;
+
+		TrayOrder(String letters) {
+			this.tray = letters.toUpperCase().toCharArray();
+			this.used = new boolean[tray.length];
+		}
+
+		@Override
+		public int compare(Word a, Word b) {
+			Arrays.fill(used, false);
+			String wa = a.word, wb = b.word;
+			for(int p=0; ; p++) {
+				if(p == wa.length() || p == wb.length()) {
+					return wa.length() - wb.length();
+				}
+				int ka = trayIndex(a.blankmask.charAt(p) == 'B' ? '*' : wa.charAt(p));
+				int kb = trayIndex(b.blankmask.charAt(p) == 'B' ? '*' : wb.charAt(p));
+				if(ka != kb) {
+					return ka - kb;
 				}
+				if(wa.charAt(p) != wb.charAt(p)) {
+					return wa.charAt(p) - wb.charAt(p);
+				}
+				used[ka] = true;
+			}
+		}
+
+		/**
+		 * Where the first unused tile c is in the tray.
+		 */
+		private int trayIndex(char c) {
+			for(int i=0; i<tray.length; i++) {
+				if(!used[i] && tray[i] == c) {
+					return i;
+				}
+			}
+			return tray.length;
 		}
-		return matches;
 	}
 }
@@ -2,15 +2,33 @@ package wwf.solver;
 
 public class DictionaryNode {
 
-	private DictionaryNode[] nextLetters = new DictionaryNode[26];
+	private static final DictionaryNode[] NO_CHILDREN = new DictionaryNode[0];
+	
+	// Bit i of childMask is set if there is a child for letter 'A'+i. The
+	// children themselves are stored densely, in letter order, so a node only
+	// pays for the children it actually has.
+	private int childMask = 0;
+	private DictionaryNode[] nextLetters = NO_CHILDREN;
 	private boolean isEndOfWord = false;
+	// Handle assigned by TrieLexicon
+	int id;
 
 	public DictionaryNode addLetter(char c) {
 		int cc = Character.toUpperCase(c) - 'A';
-		if(nextLetters[cc] == null) {
-			nextLetters[cc] = new DictionaryNode();
+		if(cc < 0 || cc >= 26) {
+			throw new IllegalArgumentException("Only letters can be added, not '" + c + "'.");
+		}
+		int bit = 1 << cc;
+		int idx = Integer.bitCount(childMask & (bit-1));
+		if((childMask & bit) == 0) {
+			DictionaryNode[] grown = new DictionaryNode[nextLetters.length+1];
+			System.arraycopy(nextLetters, 0, grown, 0, idx);
+			System.arraycopy(nextLetters, idx, grown, idx+1, nextLetters.length-idx);
+			grown[idx] = new DictionaryNode();
+			nextLetters = grown;
+			childMask |= bit;
 		}
-		return nextLetters[cc];
+		return nextLetters[idx];
 	}
 	
 	public DictionaryNode addLastLetter(char c) throws Exception {
@@ -26,11 +44,19 @@ public class DictionaryNode {
 		return isEndOfWord;
 	}
 	
+	public int childMask() {
+		return childMask;
+	}
+	
 	public DictionaryNode getNextLetter(char c) {
 		int cc = Character.toUpperCase(c) - 'A';
-		if(cc < 0 || cc > nextLetters.length) {
+		if(cc < 0 || cc >= 26) {
+			return null;
+		}
+		int bit = 1 << cc;
+		if((childMask & bit) == 0) {
 			return null;
 		}
-		return nextLetters[cc];
+		return nextLetters[Integer.bitCount(childMask & (bit-1))];
 	}
 }
@@ -0,0 +1,231 @@
+package wwf.solver;
+
+import java.util.Arrays;
+
+/**
+ * Double-array trie. Every node is a slot in two parallel int arrays, and the
+ * transition from slot s on letter code c (1-26) is slot t = base[s] + c,
+ * which is only valid if check[t] == s. Following a letter is therefore one
+ * add, one array read and one compare - no objects and no pointer chasing.
+ *
+ * This is a plain trie (suffixes are not shared), so it is larger than the
+ * DAWG but faster to walk.
+ */
+public class DoubleArrayLexicon implements Lexicon {
+	private int[] base;
+	private int[] check;
+	private int[] masks; // child mask per slot, so children can be listed without probing
+	private long[] ends;  // bit per slot: slot ends a word
+	private int nodeCount;
+	
+	// Free-slot list, only used while building
+	private int[] nextFree;
+	private int[] prevFree;
+	private int freeHead;
+	private int freeTail;
+
+	private DoubleArrayLexicon() {
+	}
+
+	/**
+	 * Builds a double array holding the same words as src.
+	 */
+	public static DoubleArrayLexicon build(Lexicon src) {
+		DoubleArrayLexicon da = new DoubleArrayLexicon();
+		da.base = new int[0];
+		da.check = new int[0];
+		da.masks = new int[0];
+		da.ends = new long[1];
+		// Free slots are kept in a doubly linked list while building, so that
+		// looking for a base only ever visits slots that could take a child.
+		da.nextFree = new int[0];
+		da.prevFree = new int[0];
+		da.freeHead = -1;
+		da.freeTail = -1;
+		da.grow(Math.max(1024, src.nodeCount()*2));
+		
+		// Breadth-first over the source, placing each node's children as a group
+		int[] queueSrc = new int[1024];
+		int[] queueSlot = new int[1024];
+		int head = 0, tail = 0;
+		queueSrc[tail] = src.root();
+		queueSlot[tail++] = 0;
+		da.use(0, 0); // root is its own parent, so slot 0 is never handed out
+		da.nodeCount = 1;
+		int[] codes = new int[26];
+		int[] children = new int[26];
+		while(head < tail) {
+			int s = queueSrc[head];
+			int slot = queueSlot[head++];
+			if(src.isEndOfWord(s)) {
+				da.ends[slot >>> 6] |= 1L << slot;
+			}
+			int mask = src.childMask(s);
+			int ct = 0;
+			for(int m = mask; m != 0; m &= m-1) {
+				int letter = Integer.numberOfTrailingZeros(m);
+				codes[ct] = letter + 1;
+				children[ct++] = src.getNextLetter(s, (char)('A' + letter));
+			}
+			if(ct == 0) {
+				continue;
+			}
+			da.masks[slot] = mask;
+			int b = da.findBase(codes, ct);
+			da.base[slot] = b;
+			for(int i=0; i<ct; i++) {
+				da.use(b+codes[i], slot);
+				da.nodeCount++;
+			}
+			// Grow the queue if needed, compacting out the consumed part first
+			if(tail + ct > queueSrc.length) {
+				int live = tail - head;
+				int[] ns = new int[Math.max(queueSrc.length, live*2 + 26)];
+				int[] nt = new int[ns.length];
+				System.arraycopy(queueSrc, head, ns, 0, live);
+				System.arraycopy(queueSlot, head, nt, 0, live);
+				queueSrc = ns;
+				queueSlot = nt;
+				head = 0;
+				tail = live;
+			}
+			for(int i=0; i<ct; i++) {
+				queueSrc[tail] = children[i];
+				queueSlot[tail++] = b+codes[i];
+			}
+		}
+		da.nextFree = null;
+		da.prevFree = null;
+		da.trim();
+		return da;
+	}
+
+	/**
+	 * Lowest base at which every child code lands on a free slot.
+	 */
+	private int findBase(int[] codes, int ct) {
+		int f = freeHead;
+		while(true) {
+			if(f < 0) {
+				// Ran off the end of the list, so make more room
+				int from = check.length;
+				grow(from + 64);
+				f = from;
+			}
+			int b = f - codes[0];
+			if(b >= 1) {
+				if(b + codes[ct-1] >= check.length) {
+					grow(b + codes[ct-1] + 1);
+				}
+				boolean fits = true;
+				for(int i=1; i<ct; i++) {
+					if(check[b+codes[i]] >= 0) {
+						fits = false;
+						break;
+					}
+				}
+				if(fits) {
+					return b;
+				}
+			}
+			f = nextFree[f];
+		}
+	}
+
+	private void use(int slot, int parent) {
+		check[slot] = parent;
+		int p = prevFree[slot];
+		int n = nextFree[slot];
+		if(p >= 0) {
+			nextFree[p] = n;
+		}
+		else {
+			freeHead = n;
+		}
+		if(n >= 0) {
+			prevFree[n] = p;
+		}
+		else {
+			freeTail = p;
+		}
+	}
+
+	private void grow(int needed) {
+		int cap = Math.max(needed, check.length + check.length/2);
+		int old = check.length;
+		base = Arrays.copyOf(base, cap);
+		check = Arrays.copyOf(check, cap);
+		Arrays.fill(check, old, cap, -1);
+		masks = Arrays.copyOf(masks, cap);
+		ends = Arrays.copyOf(ends, (cap >>> 6) + 1);
+		nextFree = Arrays.copyOf(nextFree, cap);
+		prevFree = Arrays.copyOf(prevFree, cap);
+		for(int i=old; i<cap; i++) {
+			prevFree[i] = freeTail;
+			nextFree[i] = -1;
+			if(freeTail >= 0) {
+				nextFree[freeTail] = i;
+			}
+			else {
+				freeHead = i;
+			}
+			freeTail = i;
+		}
+	}
+
+	private void trim() {
+		int len = check.length;
+		while(len > 1 && check[len-1] < 0) {
+			len--;
+		}
+		base = Arrays.copyOf(base, len);
+		check = Arrays.copyOf(check, len);
+		masks = Arrays.copyOf(masks, len);
+		ends = Arrays.copyOf(ends, (len >>> 6) + 1);
+	}
+
+	@Override
+	public int root() {
+		return 0;
+	}
+
+	@Override
+	public int getNextLetter(int node, char c) {
+		int code = Character.toUpperCase(c) - 'A' + 1;
+		if(code < 1 || code > 26) {
+			return NONE;
+		}
+		int t = base[node] + code;
+		if(t < check.length && check[t] == node) {
+			return t;
+		}
+		return NONE;
+	}
+
+	@Override
+	public boolean isEndOfWord(int node) {
+		return (ends[node >>> 6] & (1L << node)) != 0;
+	}
+
+	@Override
+	public int childMask(int node) {
+		return masks[node];
+	}
+
+	@Override
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public int handleLimit() {
+		return check.length;
+	}
+
+	/**
+	 * Length of the base/check arrays; nodeCount() of them are in use.
+	 */
+	public int slotCount() {
+		return check.length;
+	}
+}
@@ -0,0 +1,163 @@
+package wwf.solver;
+
+import java.util.Arrays;
+
+/**
+ * A GADDAG (Gordon, 1994) of a word list. Each word is stored once for
+ * every letter it has: the letters up to and including that one reversed,
+ * then a separator, then the letters after it. CARE is stored as C^ARE,
+ * AC^RE, RAC^E and ERAC (a split after the last letter needs no
+ * separator). A path can so start at any letter of a word, run leftwards
+ * from it, and then, past the separator, run rightwards. Moves are built
+ * that way outwards from a square next to the tiles on the board.
+ *
+ * The strings are minimized into a DawgLexicon over 27 symbols, the
+ * separator being the one after 'Z', in the same way as the main graph.
+ */
+public class Gaddag {
+	public static final int SEPARATOR = 26;
+
+	private DawgLexicon graph;
+
+	private Gaddag(DawgLexicon graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Builds the GADDAG of every word numbered by ids. One pass over the
+	 * words puts each string, as symbol codes, in the bucket of its first
+	 * letter; the buckets are then sorted and minimized in turn, each freed
+	 * once done.
+	 */
+	public static Gaddag build(WordIds ids) {
+		int n = ids.wordCount();
+		char[] buf = new char[32];
+		// By first letter: the strings' codes, each ended by END, and where
+		// each string starts
+		byte[][] codes = new byte[26][1024];
+		int[] used = new int[26];
+		int[][] starts = new int[26][256];
+		int[] count = new int[26];
+		for(int id=0; id<n; id++) {
+			int len;
+			while((len = ids.word(id, buf)) > buf.length) {
+				buf = new char[len];
+			}
+			// Split after letter i, which becomes the string's first
+			for(int i=0; i<len; i++) {
+				int b = buf[i] - 'A';
+				if(used[b] + len + 2 > codes[b].length) {
+					codes[b] = Arrays.copyOf(codes[b], Math.max(used[b] + len + 2, codes[b].length*2));
+				}
+				if(count[b] == starts[b].length) {
+					starts[b] = Arrays.copyOf(starts[b], count[b]*2);
+				}
+				starts[b][count[b]++] = used[b];
+				byte[] c = codes[b];
+				int k = used[b];
+				for(int j=i; j>=0; j--) {
+					c[k++] = (byte)(buf[j] - 'A');
+				}
+				if(i+1 < len) {
+					c[k++] = SEPARATOR;
+					for(int j=i+1; j<len; j++) {
+						c[k++] = (byte)(buf[j] - 'A');
+					}
+				}
+				c[k++] = END;
+				used[b] = k;
+			}
+		}
+		LexiconBuilder.Minimizer min = new LexiconBuilder.Minimizer();
+		char[] s = new char[33];
+		for(int b=0; b<26; b++) {
+			byte[] c = codes[b];
+			int[] at = starts[b];
+			sort(c, at, new int[count[b]], 0, count[b]);
+			for(int i=0; i<count[b]; i++) {
+				if(i > 0 && compare(c, at[i-1], at[i]) == 0) {
+					continue;
+				}
+				int k = 0;
+				for(int p = at[i]; c[p] != END; p++) {
+					if(k == s.length) {
+						s = Arrays.copyOf(s, k*2);
+					}
+					s[k++] = (char)('A' + c[p]);
+				}
+				min.add(new String(s, 0, k));
+			}
+			codes[b] = null;
+			starts[b] = null;
+		}
+		return new Gaddag(min.finish());
+	}
+
+	// Ends a string in a bucket; below every code, so a string sorts before
+	// the longer ones it starts
+	private static final byte END = -1;
+
+	/**
+	 * Merge sorts the strings starting at at[lo .. hi) in c.
+	 */
+	private static void sort(byte[] c, int[] at, int[] tmp, int lo, int hi) {
+		if(hi - lo < 2) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		sort(c, at, tmp, lo, mid);
+		sort(c, at, tmp, mid, hi);
+		if(compare(c, at[mid-1], at[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(at, lo, tmp, lo, hi - lo);
+		int i = lo, j = mid, k = lo;
+		while(i < mid && j < hi) {
+			at[k++] = (compare(c, tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++]);
+		}
+		while(i < mid) {
+			at[k++] = tmp[i++];
+		}
+		while(j < hi) {
+			at[k++] = tmp[j++];
+		}
+	}
+
+	private static int compare(byte[] c, int x, int y) {
+		while(c[x] == c[y] && c[x] != END) {
+			x++;
+			y++;
+		}
+		return c[x] - c[y];
+	}
+
+	public int root() {
+		return graph.root();
+	}
+
+	/**
+	 * The node after symbol code (0 for 'A', SEPARATOR), or Lexicon.NONE.
+	 */
+	public int next(int node, int code) {
+		return graph.child(node, code);
+	}
+
+	/**
+	 * Whether the path to node spells a whole word: a word reversed, or the
+	 * start of one reversed, the separator and the rest of it.
+	 */
+	public boolean isEndOfWord(int node) {
+		return graph.isEndOfWord(node);
+	}
+
+	/**
+	 * The symbols node has children on, bit SEPARATOR for the separator.
+	 */
+	public int childMask(int node) {
+		return graph.childMask(node);
+	}
+
+	public int nodeCount() {
+		return graph.nodeCount();
+	}
+}
@@ -0,0 +1,90 @@
+package wwf.solver;
+
+/**
+ * findMoves by the GADDAG (Dictionary.Strategy.GADDAG). Moves are built out
+ * from their anchor, leftwards first and then, past the GADDAG's
+ * separator, rightwards.
+ */
+final class GaddagMoves extends MoveGenerator {
+	private Gaddag gaddag;
+	private int anchorPos;
+
+	GaddagMoves(GameBoard g, CrossChecks checks, Gaddag gaddag, String letterTray) {
+		super(g, checks, letterTray);
+		this.gaddag = gaddag;
+	}
+
+	@Override
+	protected void searchAnchor(int k) {
+		anchorPos = k;
+		gen(k, gaddag.root(), true, k);
+	}
+
+	/**
+	 * Puts a letter on square pos, from GADDAG node node. left is set while
+	 * the word is still being built leftwards from the anchor; lo is its
+	 * leftmost square so far.
+	 */
+	private void gen(int pos, int node, boolean left, int lo) {
+		if(line[pos] != 0) {
+			int next = gaddag.next(node, line[pos] - 'A');
+			if(next != Lexicon.NONE) {
+				letters[pos] = line[pos];
+				goOn(pos, next, left, lo);
+			}
+			return;
+		}
+		if(tilesLeft == 0) {
+			return;
+		}
+		int choices = gaddag.childMask(node) & cross[pos];
+		for(int m = choices; m != 0; m &= m-1) {
+			int l = Integer.numberOfTrailingZeros(m);
+			int next = gaddag.next(node, l);
+			letters[pos] = (char)('A' + l);
+			tilesLeft--;
+			if(rack[l] > 0) {
+				rack[l]--;
+				placedBlank[pos] = false;
+				goOn(pos, next, left, lo);
+				rack[l]++;
+			}
+			if(blanks > 0) {
+				blanks--;
+				placedBlank[pos] = true;
+				goOn(pos, next, left, lo);
+				blanks++;
+			}
+			tilesLeft++;
+		}
+	}
+
+	/**
+	 * A letter has just gone on square pos, reaching node.
+	 */
+	private void goOn(int pos, int node, boolean left, int lo) {
+		if(left) {
+			lo = pos;
+			if(gaddag.isEndOfWord(node) && empty(pos-1) && empty(anchorPos+1)) {
+				record(lo, anchorPos);
+			}
+			// Squares left of the anchor are never anchors themselves: a
+			// move covering one is built from that one instead
+			if(pos > 0 && !anchor[pos-1]) {
+				gen(pos-1, node, true, lo);
+			}
+			int sep = gaddag.next(node, Gaddag.SEPARATOR);
+			if(sep != Lexicon.NONE && empty(pos-1) && anchorPos+1 < size) {
+				gen(anchorPos+1, sep, false, lo);
+			}
+		}
+		else {
+			if(gaddag.isEndOfWord(node) && empty(pos+1)) {
+				record(lo, pos);
+			}
+			if(pos+1 < size) {
+				gen(pos+1, node, false, lo);
+			}
+		}
+	}
+}
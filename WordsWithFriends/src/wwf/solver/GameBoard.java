@@ -1,6 +1,7 @@
 package wwf.solver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 public class GameBoard {
@@ -22,6 +23,12 @@ public class GameBoard {
 	private int allTilesPlacedBonus;
 	private int maxTiles;
 	private int boardType;
+	// The cross-checks of the last search, and the rows and columns whose
+	// tiles have changed since; guarded by this
+	private CrossChecks crossChecks;
+	private boolean[] dirtyRows;
+	private boolean[] dirtyCols;
+	private boolean anyDirty = false;
 	
 	// Mask of word multipliers on board
 	public enum Mul {
@@ -41,6 +48,8 @@ public class GameBoard {
 	public GameBoard(int size, int gameType) {
 		board = new Tile[size][size];
 		this.size = size;
+		dirtyRows = new boolean[size];
+		dirtyCols = new boolean[size];
 		setGameType(gameType);
 	}
 	
@@ -75,6 +84,10 @@ public class GameBoard {
 	 */
 	public ArrayList<TilePlacement> findLocationsForWord(Word w, Dictionary dict) {
 		ArrayList<TilePlacement> result = new ArrayList<TilePlacement>();
+		// The same words for every location
+		dict = dict.snapshot();
+		WordBatch crossWords = new WordBatch();
+		char[] hookWord = new char[size];
 		if(isEmpty()) {
 			int center = size/2;
 			int startMin = (center + 1 - w.length() >= 0 ? center + 1 - w.length() : 0);
@@ -102,13 +115,13 @@ public class GameBoard {
 			for(int i=0; i<size; i++) { // row
 				for(int j=0; j<size; j++) { // col
 					// RIGHT
-					int pointVal = wordFits(w.word, i, j, Dir.RIGHT, w.blankmask, dict);
+					int pointVal = wordFits(w.word, i, j, Dir.RIGHT, w.blankmask, dict, crossWords, hookWord);
 					if(pointVal >= 0) {
 						// It works!
 						result.add(new TilePlacement(w, pointVal, i, j, Dir.RIGHT));
 					}
 					// DOWN
-					pointVal = wordFits(w.word, i, j, Dir.DOWN, w.blankmask, dict);
+					pointVal = wordFits(w.word, i, j, Dir.DOWN, w.blankmask, dict, crossWords, hookWord);
 					if(pointVal >= 0) {
 						// It works!
 						result.add(new TilePlacement(w, pointVal, i, j, Dir.DOWN));
@@ -138,6 +151,7 @@ public class GameBoard {
 		if (d == Dir.DOWN) {
 			for(int i=0; i<word.length(); i++) {
 				if(board[r+i][c] == null) {
+					changed(r+i, c);
 					board[r+i][c] = new Tile(word.charAt(i), boardType);
 					if(blanks.charAt(i) == 'B') {
 						board[r+i][c].setBlank();
@@ -148,6 +162,7 @@ public class GameBoard {
 		else if (d == Dir.RIGHT) {
 			for(int i=0; i<word.length(); i++) {
 				if(board[r][c+i] == null) {
+					changed(r, c+i);
 					board[r][c+i] = new Tile(word.charAt(i), boardType);
 					if(blanks.charAt(i) == 'B') {
 						board[r][c+i].setBlank();
@@ -166,6 +181,17 @@ public class GameBoard {
 	 * the tile placement. Assumes that word itself is a valid word.
 	 */
 	public int wordFits(String word, int r, int c, Dir d, String blanks, Dictionary dict) {
+		return wordFits(word, r, c, d, blanks, dict, new WordBatch(), new char[size]);
+	}
+	
+	/**
+	 * wordFits, collecting the words made across in crossWords, and the
+	 * board tiles of a cross word that only adds a tile at one end in
+	 * hookWord (of at least size letters). The caller can reuse both from
+	 * one call to the next. Only reads the board, so calls with their own
+	 * scratch can run at the same time.
+	 */
+	int wordFits(String word, int r, int c, Dir d, String blanks, Dictionary dict, WordBatch crossWords, char[] hookWord) {
 		int totalPoints = 0;
 		int mainWordPoints = 0;
 		int mainWordMult = 1;
@@ -193,6 +219,7 @@ public class GameBoard {
 		}
 		
 		boolean isConnected = false;
+		crossWords.clear();
 		
 		// Check tiles adjacent to tiles which are part of the word but not already
 		//     on the board - these must create valid words.
@@ -268,8 +295,13 @@ public class GameBoard {
 				}
 				if(exWordEnd - exWordStart > 0) {
 					isConnected = true;
-					// There is a word! Check if it is valid
-					String exWord = "";
+					// There is a word! If the new tile is at one end, it is a
+					// hook on the tiles already there, checked straight away.
+					// Otherwise it is checked with the others below.
+					int newPos = (d == Dir.DOWN ? c : r) - exWordStart;
+					boolean frontHook = (newPos == 0);
+					boolean backHook = (newPos == exWordEnd - exWordStart);
+					int hookLen = 0;
 					int exWordPts = 0;
 					int exWordMult = 1;
 					for(int j=0; j<=exWordEnd-exWordStart; j++) {
@@ -336,22 +368,38 @@ public class GameBoard {
 							}
 						}
 						
-						exWord += tile.letter();
+						if(!frontHook && !backHook) {
+							crossWords.append(tile.letter());
+						}
+						else if(j != newPos) {
+							hookWord[hookLen++] = tile.letter();
+						}
 					}
-					exWordPts *= exWordMult;
-					if(!dict.isWord(exWord)) {
-						return -1;
+					if(frontHook) {
+						if(!dict.isFrontHook(mainTile.letter(), hookWord, 0, hookLen)) {
+							return -1;
+						}
+					}
+					else if(backHook) {
+						if(!dict.isBackHook(hookWord, 0, hookLen, mainTile.letter())) {
+							return -1;
+						}
 					}
 					else {
-						totalPoints += exWordPts;
+						crossWords.endWord();
 					}
-					
+					exWordPts *= exWordMult;
+					totalPoints += exWordPts;
 				}
 			}
 		}
 		if(!isConnected) {
 			return -1;
 		}
+		// Every word made alongside the main one must be valid
+		if(crossWords.size() > 0 && !dict.areWords(crossWords)) {
+			return -1;
+		}
 		mainWordPoints *= mainWordMult;
 		totalPoints += mainWordPoints;
 		
@@ -363,6 +411,128 @@ public class GameBoard {
 		return totalPoints;
 	}
 	
+	/**
+	 * The cross-checks of this board for the words of lex: the letters that
+	 * make words across on each empty square, and their points, and the
+	 * anchors. Made once, and brought up to date in the rows and columns
+	 * where tiles have changed since.
+	 * 
+	 * Searches running at the same time on this board may each call this:
+	 * the checks returned are never changed, and bringing them up to date
+	 * makes new ones. The tiles must not change while a search is running.
+	 */
+	synchronized CrossChecks crossChecks(Lexicon lex) {
+		if(crossChecks == null || crossChecks.lexicon() != lex) {
+			crossChecks = new CrossChecks(this, lex);
+		}
+		else if(anyDirty) {
+			crossChecks = crossChecks.updated(this, dirtyRows, dirtyCols);
+		}
+		else {
+			return crossChecks;
+		}
+		Arrays.fill(dirtyRows, false);
+		Arrays.fill(dirtyCols, false);
+		anyDirty = false;
+		return crossChecks;
+	}
+	
+	/**
+	 * How many rows and columns the next crossChecks will recompute.
+	 */
+	synchronized int dirtyLines() {
+		int n = 0;
+		for(int i=0; i<size; i++) {
+			n += (dirtyRows[i] ? 1 : 0) + (dirtyCols[i] ? 1 : 0);
+		}
+		return n;
+	}
+	
+	/**
+	 * Notes that the tile on (r, c) is changing. Writing the tile a square
+	 * already has is not a change.
+	 */
+	private synchronized void changed(int r, int c) {
+		dirtyRows[r] = true;
+		dirtyCols[c] = true;
+		anyDirty = true;
+	}
+	
+	/**
+	 * wordFits by table lookups: the words made across are checked and
+	 * scored by checks (from crossChecks) rather than walked and looked up
+	 * one by one. Returns the same points, or -1.
+	 */
+	int placementPoints(String word, int r, int c, Dir d, String blanks, CrossChecks checks) {
+		int totalPoints = 0;
+		int mainWordPoints = 0;
+		int mainWordMult = 1;
+		int newTilesPlaced = 0;
+		int dr = (d == Dir.DOWN ? 1 : 0);
+		int dc = 1 - dr;
+		int len = word.length();
+		if(r + dr*len > size || c + dc*len > size) {
+			return -1;
+		}
+		// No tile may be right before or after the word
+		if(getTile(r-dr, c-dc) != null || getTile(r + dr*len, c + dc*len) != null) {
+			return -1;
+		}
+		boolean isConnected = false;
+		for(int i=0; i<len; i++) {
+			int row = r + dr*i;
+			int col = c + dc*i;
+			char letter = word.charAt(i);
+			Tile tile = board[row][col];
+			if(tile != null) {
+				if(tile.letter() != letter) {
+					return -1;
+				}
+				isConnected = true;
+				mainWordPoints += tile.pointValue();
+				continue;
+			}
+			if((checks.mask(d, row, col) & (1 << (letter - 'A'))) == 0) {
+				return -1;
+			}
+			newTilesPlaced++;
+			boolean blank = (blanks.charAt(i) == 'B');
+			int value = (blank ? 0 : new Tile(letter, boardType).pointValue());
+			switch(boardMult[row][col]) {
+			case DL:
+				mainWordPoints += value*2;
+				break;
+			case TL:
+				mainWordPoints += value*3;
+				break;
+			case DW:
+				mainWordMult *= 2;
+				mainWordPoints += value;
+				break;
+			case TW:
+				mainWordMult *= 3;
+				mainWordPoints += value;
+				break;
+			case XX:
+				mainWordPoints += value;
+				break;
+			}
+			// A word made across
+			if(getTile(row-dc, col-dr) != null || getTile(row+dc, col+dr) != null) {
+				isConnected = true;
+				totalPoints += checks.points(d, row, col, letter, blank);
+			}
+		}
+		if(!isConnected) {
+			return -1;
+		}
+		totalPoints += mainWordPoints * mainWordMult;
+		if(newTilesPlaced == maxTiles) {
+			totalPoints += allTilesPlacedBonus;
+		}
+		return totalPoints;
+	}
+	
 	/**
 	 * Same operation as wordFits, but assuming an empty board, and will
 	 * only be deemed "fitting" if it covers the center square.
@@ -435,11 +605,18 @@ public class GameBoard {
 	}
 	
 	public void setSquare(int r, int c, char t, boolean isBlank) {
+		Tile old = board[r][c];
+		if(old == null || old.letter() != Character.toUpperCase(t) || old.isBlank() != isBlank) {
+			changed(r, c);
+		}
 		board[r][c] = new Tile(t, boardType);
 		if(isBlank) board[r][c].setBlank();
 	}
 	
 	public void clearSquare(int r, int c) {
+		if(board[r][c] != null) {
+			changed(r, c);
+		}
 		board[r][c] = null;
 	}
 	
@@ -518,6 +695,50 @@ public class GameBoard {
 		return boardMult[r][c];
 	}
 	
+	/**
+	 * Returns every word on the board (each run of two or more tiles across
+	 * or down) that is not in dict. All of them are checked in one batch.
+	 */
+	public ArrayList<String> findInvalidWords(Dictionary dict) {
+		WordBatch words = new WordBatch();
+		for(int i=0; i<size; i++) {
+			addRuns(words, i, Dir.RIGHT);
+			addRuns(words, i, Dir.DOWN);
+		}
+		ArrayList<String> invalid = new ArrayList<String>();
+		if(dict.checkWords(words) > 0) {
+			for(int i=0; i<words.size(); i++) {
+				if(!words.isValid(i)) {
+					invalid.add(words.word(i));
+				}
+			}
+		}
+		return invalid;
+	}
+	
+	/**
+	 * Adds the runs of two or more tiles in row line (RIGHT) or column line
+	 * (DOWN) to words.
+	 */
+	private void addRuns(WordBatch words, int line, Dir d) {
+		int runStart = 0;
+		for(int i=0; i<=size; i++) {
+			Tile t = null;
+			if(i < size) {
+				t = (d == Dir.RIGHT ? board[line][i] : board[i][line]);
+			}
+			if(t == null) {
+				if(i - runStart >= 2) {
+					for(int j=runStart; j<i; j++) {
+						words.append(d == Dir.RIGHT ? board[line][j].letter() : board[j][line].letter());
+					}
+					words.endWord();
+				}
+				runStart = i+1;
+			}
+		}
+	}
+	
 	public boolean isEmpty() {
 		for(int i=0; i<size; i++) {
 			for(int j=0; j<size; j++) {
@@ -530,6 +751,9 @@ public class GameBoard {
 	}
 	
 	public void setGameType(int type) {
+		synchronized(this) {
+			crossChecks = null;
+		}
 		switch(type) {
 		case WWF:
 			boardMult = buildBoardMultWWF(size);
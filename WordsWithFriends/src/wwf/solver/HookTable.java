@@ -0,0 +1,73 @@
+package wwf.solver;
+
+/**
+ * For every word, the letters that can be put in front of it or after it to
+ * make another word: CAT takes S at the back (CATS) and S at the front
+ * (SCAT). Most cross words on a board are an existing word plus one new
+ * tile at one end, and with this table each of those is one bit test once
+ * the word's id is known.
+ */
+public class HookTable {
+	// By word id, bit i for 'A'+i
+	private int[] front;
+	private int[] back;
+
+	private HookTable() {
+	}
+
+	public static HookTable build(Lexicon lex, WordIds ids) {
+		HookTable t = new HookTable();
+		int n = ids.wordCount();
+		t.front = new int[n];
+		t.back = new int[n];
+		char[] buf = new char[32];
+		for(int id=0; id<n; id++) {
+			int len;
+			while((len = ids.word(id, buf)) > buf.length) {
+				buf = new char[len];
+			}
+			int node = lex.root();
+			for(int i=0; i<len; i++) {
+				node = lex.getNextLetter(node, buf[i]);
+			}
+			t.back[id] = backHooks(lex, node);
+			// This word, less its first letter, takes that letter in front
+			if(len >= 2) {
+				int rest = ids.id(buf, 1, len-1);
+				if(rest >= 0) {
+					t.front[rest] |= 1 << (buf[0] - 'A');
+				}
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * The letters that can follow the word ending at node. Needs no table,
+	 * so it works for any node, word or not.
+	 */
+	public static int backHooks(Lexicon lex, int node) {
+		int hooks = 0;
+		for(int m = lex.childMask(node); m != 0; m &= m-1) {
+			char c = (char)('A' + Integer.numberOfTrailingZeros(m));
+			if(lex.isEndOfWord(lex.getNextLetter(node, c))) {
+				hooks |= m & -m;
+			}
+		}
+		return hooks;
+	}
+
+	/**
+	 * Letters that can go in front of word id (bit i for 'A'+i).
+	 */
+	public int frontHooks(int id) {
+		return front[id];
+	}
+
+	/**
+	 * Letters that can go after word id.
+	 */
+	public int backHooks(int id) {
+		return back[id];
+	}
+}
@@ -0,0 +1,34 @@
+package wwf.solver;
+
+/**
+ * Read-only view of a compiled word list. Nodes are referred to by int handles
+ * rather than objects so that implementations can keep their whole structure
+ * in a few flat arrays. A handle of NONE means "no such node".
+ */
+public interface Lexicon {
+	public static final int NONE = -1;
+
+	public int root();
+
+	/**
+	 * Returns the node reached from node by following letter c, or NONE.
+	 */
+	public int getNextLetter(int node, char c);
+
+	public boolean isEndOfWord(int node);
+
+	/**
+	 * Bit i is set if node has a child for letter 'A'+i.
+	 */
+	public int childMask(int node);
+
+	/**
+	 * Number of distinct nodes in the structure.
+	 */
+	public int nodeCount();
+
+	/**
+	 * Every node handle is below this, so handles can index an array.
+	 */
+	public int handleLimit();
+}
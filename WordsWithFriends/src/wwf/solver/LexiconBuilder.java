@@ -0,0 +1,342 @@
+package wwf.solver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Builds a DawgLexicon from any number of word lists of any size.
+ *
+ * Words are streamed in and cut into chunks, and each chunk is sorted and
+ * de-duplicated on a worker thread while reading carries on. build() merges
+ * the sorted chunks and feeds the merged words, in order, to an incremental
+ * minimization (Daciuk et al.) that only ever holds the path of the current
+ * word: each time the next word leaves part of that path, the part left
+ * behind is final and is registered straight into the DAWG. There is no
+ * intermediate trie and no per-word duplicate handling.
+ *
+ * Words added one at a time are held, sorted, until build(). A lexicon added
+ * whole is not copied: its words are read straight out of its graph, already
+ * in order, as build() merges them.
+ */
+public class LexiconBuilder {
+	private static final int CHUNK_SIZE = 50000;
+
+	private ExecutorService pool;
+	private ArrayList<Future<String[]>> runs = new ArrayList<Future<String[]>>();
+	private ArrayList<Lexicon> lexicons = new ArrayList<Lexicon>();
+	private ArrayList<String> chunk = new ArrayList<String>();
+	private char[] buf = new char[32];
+	private int strippedCount = 0;
+	private int duplicateCount = 0;
+
+	/**
+	 * Adds one word. Letters are upper-cased and anything else is dropped.
+	 */
+	public void addWord(String word) {
+		if(word.length() > buf.length) {
+			buf = new char[word.length()];
+		}
+		int len = 0;
+		for(int i=0; i<word.length(); i++) {
+			char c = Character.toUpperCase(word.charAt(i));
+			if(c >= 'A' && c <= 'Z') {
+				buf[len++] = c;
+			}
+		}
+		if(len != word.length()) {
+			strippedCount++;
+		}
+		if(len == 0) {
+			return;
+		}
+		chunk.add(new String(buf, 0, len));
+		if(chunk.size() >= CHUNK_SIZE) {
+			flushChunk();
+		}
+	}
+
+	/**
+	 * Adds every line of a word list, returning the number of lines read.
+	 */
+	public int addWordList(InputStream is) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(is));
+		String word;
+		int lines = 0;
+		while((word = br.readLine()) != null) {
+			addWord(word);
+			lines++;
+		}
+		return lines;
+	}
+
+	/**
+	 * Adds every word of an existing lexicon. Its words are read as build()
+	 * merges, so lex must not change until then.
+	 */
+	public void addLexicon(Lexicon lex) {
+		lexicons.add(lex);
+	}
+
+	/**
+	 * Number of words so far that had characters other than letters removed.
+	 */
+	public int strippedCount() {
+		return strippedCount;
+	}
+
+	/**
+	 * Number of repeated words dropped by the last build().
+	 */
+	public int duplicateCount() {
+		return duplicateCount;
+	}
+
+	private void flushChunk() {
+		final String[] words = chunk.toArray(new String[chunk.size()]);
+		chunk = new ArrayList<String>();
+		runs.add(pool().submit(new Callable<String[]>() {
+			@Override
+			public String[] call() {
+				Arrays.sort(words);
+				// Drop repeats, which are now next to each other
+				int n = 0;
+				for(int i=0; i<words.length; i++) {
+					if(n == 0 || !words[i].equals(words[n-1])) {
+						words[n++] = words[i];
+					}
+				}
+				return Arrays.copyOf(words, n);
+			}
+		}));
+	}
+
+	private ExecutorService pool() {
+		if(pool == null) {
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "LexiconBuilder");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+
+	/**
+	 * Builds the minimized graph of every word added. The builder is empty
+	 * again afterwards.
+	 */
+	public DawgLexicon build() {
+		if(!chunk.isEmpty()) {
+			flushChunk();
+		}
+		// Merge the sorted runs and lexicons
+		PriorityQueue<Cursor> heads = new PriorityQueue<Cursor>();
+		for(Future<String[]> f : runs) {
+			String[] run;
+			try {
+				run = f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while building lexicon.", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Sorting word list failed.", e.getCause());
+			}
+			RunCursor head = new RunCursor(run);
+			if(head.advance()) {
+				heads.add(head);
+			}
+		}
+		runs.clear();
+		for(Lexicon lex : lexicons) {
+			LexiconCursor head = new LexiconCursor(lex);
+			if(head.advance()) {
+				heads.add(head);
+			}
+		}
+		lexicons.clear();
+		if(pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+
+		Minimizer min = new Minimizer();
+		String prev = "";
+		duplicateCount = 0;
+		while(!heads.isEmpty()) {
+			Cursor head = heads.poll();
+			String w = head.current();
+			if(head.advance()) {
+				heads.add(head);
+			}
+			if(w.equals(prev)) {
+				duplicateCount++;
+				continue;
+			}
+			min.add(w);
+			prev = w;
+		}
+		return min.finish();
+	}
+
+	/**
+	 * The incremental minimization: takes distinct words in sorted order and
+	 * builds their minimized graph. Letters run from 'A' up to 'A'+26, one
+	 * past 'Z', which the GADDAG uses as its separator.
+	 */
+	static class Minimizer {
+		private DawgLexicon.Registry registry = new DawgLexicon.Registry();
+		// The path of the previous word: state d is reached by its first d
+		// letters. Each state's edges so far are packed (class << 5) | letter;
+		// the edge to state d+1 is only added once that state is registered.
+		private int[][] pathEdges = new int[1][27];
+		private int[] pathEdgeCt = new int[1];
+		private boolean[] pathEnd = new boolean[1];
+		private CharSequence prev = "";
+
+		/**
+		 * Adds the next word, which must come after every word added so far.
+		 */
+		void add(CharSequence w) {
+			int common = 0;
+			while(common < prev.length() && common < w.length() && prev.charAt(common) == w.charAt(common)) {
+				common++;
+			}
+			// States past the common prefix can no longer change
+			registerPath(common);
+			if(w.length() >= pathEnd.length) {
+				int cap = Math.max(w.length()+1, pathEnd.length*2);
+				int[][] grown = Arrays.copyOf(pathEdges, cap);
+				for(int d=pathEdges.length; d<cap; d++) {
+					grown[d] = new int[27];
+				}
+				pathEdges = grown;
+				pathEdgeCt = Arrays.copyOf(pathEdgeCt, cap);
+				pathEnd = Arrays.copyOf(pathEnd, cap);
+			}
+			for(int d=common+1; d<=w.length(); d++) {
+				pathEdgeCt[d] = 0;
+				pathEnd[d] = false;
+			}
+			pathEnd[w.length()] = true;
+			prev = w;
+		}
+
+		DawgLexicon finish() {
+			registerPath(0);
+			int root = registry.register(pathEnd[0], pathEdges[0], pathEdgeCt[0]);
+			return registry.toLexicon(root);
+		}
+
+		/**
+		 * Registers the states of the previous word's path deeper than depth
+		 * keep, deepest first, linking each into its parent.
+		 */
+		private void registerPath(int keep) {
+			for(int d=prev.length(); d>keep; d--) {
+				int cls = registry.register(pathEnd[d], pathEdges[d], pathEdgeCt[d]);
+				pathEdges[d-1][pathEdgeCt[d-1]++] = (cls << 5) | (prev.charAt(d-1) - 'A');
+			}
+		}
+	}
+
+	/**
+	 * A sorted source of words for build() to merge. advance() moves to the
+	 * first word, then each next one, and returns false past the last.
+	 */
+	private static abstract class Cursor implements Comparable<Cursor> {
+		abstract String current();
+
+		abstract boolean advance();
+
+		@Override
+		public int compareTo(Cursor o) {
+			return current().compareTo(o.current());
+		}
+	}
+
+	private static class RunCursor extends Cursor {
+		private String[] run;
+		private int pos = -1;
+
+		RunCursor(String[] run) {
+			this.run = run;
+		}
+
+		@Override
+		String current() {
+			return run[pos];
+		}
+
+		@Override
+		boolean advance() {
+			return ++pos < run.length;
+		}
+	}
+
+	/**
+	 * The words of a lexicon, in order: a depth-first walk taking each
+	 * node's children in letter order, holding only the current path.
+	 */
+	private static class LexiconCursor extends Cursor {
+		private Lexicon lex;
+		// nodes[d] is reached by letters[0 .. d); masks[d] are its children
+		// not yet walked
+		private int[] nodes = new int[16];
+		private int[] masks = new int[16];
+		private char[] letters = new char[16];
+		private int depth = 0;
+		private String current;
+
+		LexiconCursor(Lexicon lex) {
+			this.lex = lex;
+			nodes[0] = lex.root();
+			masks[0] = lex.childMask(nodes[0]);
+		}
+
+		@Override
+		String current() {
+			return current;
+		}
+
+		@Override
+		boolean advance() {
+			while(depth >= 0) {
+				int m = masks[depth];
+				if(m == 0) {
+					depth--;
+					continue;
+				}
+				masks[depth] = m & (m-1);
+				char c = (char)('A' + Integer.numberOfTrailingZeros(m));
+				int next = lex.getNextLetter(nodes[depth], c);
+				if(depth+1 == nodes.length) {
+					nodes = Arrays.copyOf(nodes, nodes.length*2);
+					masks = Arrays.copyOf(masks, masks.length*2);
+					letters = Arrays.copyOf(letters, letters.length*2);
+				}
+				letters[depth++] = c;
+				nodes[depth] = next;
+				masks[depth] = lex.childMask(next);
+				if(lex.isEndOfWord(next)) {
+					current = new String(letters, 0, depth);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package wwf.solver;
+
+import java.io.File;
+
+/**
+ * Build step: compiles word lists into a lexicon image that
+ * Dictionary.loadCompiled can memory-map at startup.
+ * 
+ * Usage: LexiconCompiler <output file> <word list resource>...
+ * With no word lists given, the solver's default lists are used.
+ */
+public class LexiconCompiler {
+
+	public static void main(String[] args) {
+		if(args.length < 1) {
+			System.out.println("Usage: LexiconCompiler <output file> [word list resource]...");
+			System.exit(1);
+		}
+		String[] lists = new String[args.length-1];
+		System.arraycopy(args, 1, lists, 0, lists.length);
+		if(lists.length == 0) {
+			lists = WWFSolverGUI.dictionaryFiles;
+		}
+		
+		try {
+			Dictionary dict = new Dictionary();
+			for(String s : lists) {
+				Dictionary.makeDictionary(dict, s);
+			}
+			File out = new File(args[0]);
+			dict.saveCompiled(out);
+			// Read it back to make sure the image is good
+			Dictionary.loadCompiled(out);
+			System.out.println("Wrote " + out + " (" + out.length() + " bytes).");
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package wwf.solver;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The dictionary for each game type (GameBoard.WWF, GameBoard.SCRABBLE),
+ * loaded the first time a board of that type asks for it and shared by
+ * every such board.
+ *
+ * Each game type has a dictionary of its own, even where two are
+ * registered with the same word lists and image, so that words added to or
+ * removed from one (Dictionary.addWord, removeWord) never show in the
+ * other. They still share the mapped image. Once loaded, a dictionary is
+ * held for as long as the registry is, so such changes are never lost.
+ */
+public class LexiconRegistry {
+	private Dictionary.Backend backend;
+	private HashMap<Integer, Source> sources = new HashMap<Integer, Source>();
+	private HashMap<Integer, Dictionary> loaded = new HashMap<Integer, Dictionary>();
+
+	/**
+	 * Where a dictionary comes from; see Dictionary.loadInBackground.
+	 */
+	private static class Source {
+		File image;
+		String[] wordLists;
+
+		Source(File image, String[] wordLists) {
+			this.image = image;
+			this.wordLists = wordLists.clone();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Source)) {
+				return false;
+			}
+			Source s = (Source) o;
+			return (image == null ? s.image == null : image.equals(s.image)) && Arrays.equals(wordLists, s.wordLists);
+		}
+
+		@Override
+		public int hashCode() {
+			return (image == null ? 0 : image.hashCode()) + Arrays.hashCode(wordLists);
+		}
+	}
+
+	public LexiconRegistry(Dictionary.Backend backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * Sets where the dictionary for gameType comes from: the compiled image,
+	 * if it loads, otherwise the word lists, from which the image is then
+	 * written. image may be null to always use the word lists. A dictionary
+	 * already loaded for gameType is kept by whoever holds it, but no longer
+	 * given out, unless the source is the same as before.
+	 * 
+	 * Game types with different word lists need different images: each
+	 * would find the image compiled from the other's lists, and compile it
+	 * again.
+	 */
+	public synchronized void register(int gameType, File image, String[] wordLists) throws IllegalArgumentException {
+		Source source = new Source(image, wordLists);
+		for(Map.Entry<Integer, Source> e : sources.entrySet()) {
+			Source other = e.getValue();
+			if(e.getKey() != gameType && image != null && image.equals(other.image) && !source.equals(other)) {
+				throw new IllegalArgumentException("Game type " + e.getKey() + " already uses " + image + " for other word lists.");
+			}
+		}
+		if(!source.equals(sources.put(gameType, source))) {
+			loaded.remove(gameType);
+		}
+	}
+
+	/**
+	 * The dictionary for gameType, which starts loading in the background if
+	 * it is not loaded already.
+	 */
+	public synchronized Dictionary forGameType(int gameType) throws IllegalArgumentException {
+		Source source = sources.get(gameType);
+		if(source == null) {
+			throw new IllegalArgumentException("No word list registered for game type " + gameType + ".");
+		}
+		Dictionary dict = loaded.get(gameType);
+		if(dict == null) {
+			dict = Dictionary.loadInBackground(backend, source.image, source.wordLists);
+			loaded.put(gameType, dict);
+		}
+		return dict;
+	}
+
+	/**
+	 * The dictionary for g's game type.
+	 */
+	public Dictionary forBoard(GameBoard g) {
+		return forGameType(g.getGameType());
+	}
+
+	/**
+	 * Whether the dictionary for gameType has been asked for, and so is
+	 * loaded or loading.
+	 */
+	public synchronized boolean isLoaded(int gameType) {
+		return loaded.containsKey(gameType);
+	}
+}
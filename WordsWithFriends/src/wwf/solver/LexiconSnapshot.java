@@ -0,0 +1,205 @@
+package wwf.solver;
+
+/**
+ * The words of a Dictionary at one moment: a compiled graph, the words laid
+ * over it since, and the tables derived from the graph. A snapshot is never
+ * changed once published - a change publishes a new one - so a query that
+ * takes the current snapshot when it starts sees the same words throughout,
+ * without locking, whatever is published meanwhile.
+ *
+ * The derived tables are built on first use, or ahead of it by
+ * buildTables, and shared by every snapshot of the same compiled graph. A
+ * thread that wants a table another is building waits for that build.
+ */
+final class LexiconSnapshot {
+	private final Lexicon base;
+	private final int baseWords;
+	// null, or the words changed over base; never modified once published
+	private final OverlayLexicon overlay;
+	private final Tables tables;
+
+	/**
+	 * One table, built once by whichever thread asks first.
+	 */
+	private static abstract class Table<T> {
+		private volatile T value;
+
+		T get() {
+			T t = value;
+			if(t == null) {
+				synchronized(this) {
+					t = value;
+					if(t == null) {
+						t = build();
+						value = t;
+					}
+				}
+			}
+			return t;
+		}
+
+		abstract T build();
+	}
+
+	private static class Tables {
+		final Table<WordIds> wordIds;
+		final Table<AnagramIndex> anagrams;
+		final Table<SubtreeInfo> subtrees;
+		final Table<HookTable> hooks;
+		final Table<PerfectWordHash> wordHash;
+		final Table<PositionIndex> positions;
+		final Table<Gaddag> gaddag;
+
+		// classes: how the tables number base's nodes
+		Tables(final Lexicon base, final NodeClasses classes) {
+			wordIds = new Table<WordIds>() {
+				WordIds build() {
+					return WordIds.build(base, classes);
+				}
+			};
+			anagrams = new Table<AnagramIndex>() {
+				AnagramIndex build() {
+					return AnagramIndex.build(wordIds.get());
+				}
+			};
+			subtrees = new Table<SubtreeInfo>() {
+				SubtreeInfo build() {
+					return SubtreeInfo.build(base, classes);
+				}
+			};
+			hooks = new Table<HookTable>() {
+				HookTable build() {
+					return HookTable.build(base, wordIds.get());
+				}
+			};
+			wordHash = new Table<PerfectWordHash>() {
+				PerfectWordHash build() {
+					return PerfectWordHash.build(wordIds.get());
+				}
+			};
+			positions = new Table<PositionIndex>() {
+				PositionIndex build() {
+					return PositionIndex.build(wordIds.get());
+				}
+			};
+			gaddag = new Table<Gaddag>() {
+				Gaddag build() {
+					return Gaddag.build(wordIds.get());
+				}
+			};
+		}
+	}
+
+	/**
+	 * A snapshot of dawg's words, searched through base: dawg itself, or a
+	 * backend built from it. Tables of facts about a node's words are kept
+	 * per DAWG node, however many handles base has.
+	 */
+	LexiconSnapshot(Lexicon base, DawgLexicon dawg) {
+		this(base, dawg.wordCount(), null, new Tables(base, NodeClasses.of(base, dawg)));
+	}
+
+	private LexiconSnapshot(Lexicon base, int baseWords, OverlayLexicon overlay, Tables tables) {
+		this.base = base;
+		this.baseWords = baseWords;
+		this.overlay = overlay;
+		this.tables = tables;
+	}
+
+	/**
+	 * This snapshot with overlay laid over its compiled graph instead.
+	 */
+	LexiconSnapshot withOverlay(OverlayLexicon overlay) {
+		return new LexiconSnapshot(base, baseWords, overlay, tables);
+	}
+
+	/**
+	 * A copy of the overlay to make the next snapshot's changes in, or a new
+	 * one if there is none.
+	 */
+	OverlayLexicon copyOverlay() {
+		return (overlay == null ? new OverlayLexicon(base) : overlay.copy());
+	}
+
+	/**
+	 * The compiled graph without the overlay. The derived tables are built
+	 * from this.
+	 */
+	Lexicon base() {
+		return base;
+	}
+
+	/**
+	 * The words of this snapshot, including the overlay.
+	 */
+	Lexicon lexicon() {
+		return (overlaid() ? overlay : base);
+	}
+
+	/**
+	 * The number of words in this snapshot, including the overlay.
+	 */
+	int wordCount() {
+		return baseWords + (overlay == null ? 0 : overlay.wordCountChange());
+	}
+
+	boolean overlaid() {
+		return overlay != null && overlay.isChanged();
+	}
+
+	/**
+	 * The overlay, or null if no words have been changed.
+	 */
+	OverlayLexicon overlay() {
+		return (overlaid() ? overlay : null);
+	}
+
+	/**
+	 * Builds the derived tables now, so that the first queries after this
+	 * snapshot is published do not have to. The GADDAG comes last, as only
+	 * Strategy.GADDAG searches use it; the positional index, which only
+	 * Strategy.INDEX uses, is still left to its first use.
+	 */
+	void buildTables() {
+		anagrams();
+		subtrees();
+		hooks();
+		wordHash();
+		gaddag();
+	}
+
+	WordIds wordIds() {
+		return tables.wordIds.get();
+	}
+
+	SubtreeInfo subtrees() {
+		return tables.subtrees.get();
+	}
+
+	HookTable hooks() {
+		return tables.hooks.get();
+	}
+
+	PerfectWordHash wordHash() {
+		return tables.wordHash.get();
+	}
+
+	/**
+	 * Only built for searches that ask for it (Dictionary.Strategy), so
+	 * not by buildTables.
+	 */
+	PositionIndex positions() {
+		return tables.positions.get();
+	}
+
+	/**
+	 * Only used by Strategy.GADDAG searches; built last by buildTables.
+	 */
+	Gaddag gaddag() {
+		return tables.gaddag.get();
+	}
+
+	AnagramIndex anagrams() {
+		return tables.anagrams.get();
+	}
+}
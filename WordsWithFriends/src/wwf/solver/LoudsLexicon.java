@@ -0,0 +1,193 @@
+package wwf.solver;
+
+import java.util.Arrays;
+
+/**
+ * Succinct trie in LOUDS (level-order unary degree sequence) form. Nodes are
+ * numbered breadth-first, root = 0, and the shape of the trie is one bit
+ * string: for each node in order, a 1 per child followed by a 0. Besides that
+ * there is one label byte per node and one end-of-word bit per node, about
+ * 11 bits per node in total against a 26-reference array per DictionaryNode.
+ * 
+ * The children of node v are the 1s between the (v-1)th and vth 0s. The 1s
+ * are in node order too, so the kth of them (counting from 0) leads to node
+ * k+1. Finding the (v-1)th 0 is a select query, answered from a small table
+ * of zero counts per block; this makes each step slower than in the other
+ * backends, in exchange for a much smaller structure.
+ */
+public class LoudsLexicon implements Lexicon {
+	private static final int BLOCK_LONGS = 8; // 512-bit blocks
+	
+	private long[] bits;
+	private int[] zerosBefore; // 0s before the start of each block
+	private byte[] labels;     // labels[k] = letter code of node k+1
+	private long[] ends;
+	private int nodeCount;
+
+	private LoudsLexicon() {
+	}
+
+	/**
+	 * Builds the succinct form of the same words as src.
+	 */
+	public static LoudsLexicon build(Lexicon src) {
+		// Breadth-first over the source; node numbers are queue positions
+		int[] queue = new int[1024];
+		byte[] lbl = new byte[1024];
+		int head = 0, tail = 0;
+		queue[tail++] = src.root();
+		long[] bitsBuf = new long[64];
+		int bitLen = 0;
+		long[] endsBuf = new long[64];
+		while(head < tail) {
+			int v = head;
+			int s = queue[head++];
+			if(src.isEndOfWord(s)) {
+				endsBuf = ensure(endsBuf, v);
+				endsBuf[v >>> 6] |= 1L << v;
+			}
+			for(int m = src.childMask(s); m != 0; m &= m-1) {
+				int letter = Integer.numberOfTrailingZeros(m);
+				if(tail == queue.length) {
+					queue = Arrays.copyOf(queue, tail*2);
+					lbl = Arrays.copyOf(lbl, tail*2);
+				}
+				lbl[tail] = (byte)letter;
+				queue[tail++] = src.getNextLetter(s, (char)('A' + letter));
+				bitsBuf = ensure(bitsBuf, bitLen);
+				bitsBuf[bitLen >>> 6] |= 1L << bitLen;
+				bitLen++;
+			}
+			bitsBuf = ensure(bitsBuf, bitLen);
+			bitLen++; // the 0 closing this node's children
+		}
+		
+		LoudsLexicon l = new LoudsLexicon();
+		l.nodeCount = tail;
+		l.bits = Arrays.copyOf(bitsBuf, (bitLen >>> 6) + 1);
+		l.labels = new byte[tail-1];
+		System.arraycopy(lbl, 1, l.labels, 0, tail-1);
+		l.ends = Arrays.copyOf(endsBuf, (tail >>> 6) + 1);
+		
+		int blocks = (l.bits.length + BLOCK_LONGS - 1) / BLOCK_LONGS;
+		l.zerosBefore = new int[blocks+1];
+		int zeros = 0;
+		for(int b=0; b<blocks; b++) {
+			l.zerosBefore[b] = zeros;
+			for(int i=b*BLOCK_LONGS; i<Math.min(l.bits.length, (b+1)*BLOCK_LONGS); i++) {
+				zeros += 64 - Long.bitCount(l.bits[i]);
+			}
+		}
+		l.zerosBefore[blocks] = zeros;
+		return l;
+	}
+
+	private static long[] ensure(long[] a, int bit) {
+		if((bit >>> 6) >= a.length) {
+			return Arrays.copyOf(a, Math.max(a.length*2, (bit >>> 6) + 1));
+		}
+		return a;
+	}
+
+	/**
+	 * Position of the kth 0 bit, counting from 0.
+	 */
+	private int select0(int k) {
+		// Last block with fewer than k+1 zeros before it
+		int lo = 0, hi = zerosBefore.length-2;
+		while(lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if(zerosBefore[mid] <= k) {
+				lo = mid;
+			}
+			else {
+				hi = mid-1;
+			}
+		}
+		int left = k - zerosBefore[lo];
+		int i = lo*BLOCK_LONGS;
+		while(true) {
+			long inv = ~bits[i];
+			int ct = Long.bitCount(inv);
+			if(left < ct) {
+				for(int j=0; j<left; j++) {
+					inv &= inv-1; // drop lowest 0
+				}
+				return (i << 6) + Long.numberOfTrailingZeros(inv);
+			}
+			left -= ct;
+			i++;
+		}
+	}
+
+	/**
+	 * Position of the first bit of node v's child run.
+	 */
+	private int childStart(int v) {
+		return v == 0 ? 0 : select0(v-1) + 1;
+	}
+
+	@Override
+	public int root() {
+		return 0;
+	}
+
+	@Override
+	public int getNextLetter(int node, char c) {
+		int cc = Character.toUpperCase(c) - 'A';
+		if(cc < 0 || cc >= 26) {
+			return NONE;
+		}
+		int pos = childStart(node);
+		// Every bit before pos belongs to an earlier node's run: node 0s, and 1s
+		// that are the children of those nodes.
+		int k = pos - node;
+		while((bits[pos >>> 6] & (1L << pos)) != 0) {
+			int letter = labels[k];
+			if(letter == cc) {
+				return k+1;
+			}
+			if(letter > cc) {
+				break;
+			}
+			pos++;
+			k++;
+		}
+		return NONE;
+	}
+
+	@Override
+	public boolean isEndOfWord(int node) {
+		return (ends[node >>> 6] & (1L << node)) != 0;
+	}
+
+	@Override
+	public int childMask(int node) {
+		int pos = childStart(node);
+		int k = pos - node;
+		int mask = 0;
+		while((bits[pos >>> 6] & (1L << pos)) != 0) {
+			mask |= 1 << labels[k];
+			pos++;
+			k++;
+		}
+		return mask;
+	}
+
+	@Override
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public int handleLimit() {
+		return nodeCount;
+	}
+
+	/**
+	 * Approximate size of the structure in bytes.
+	 */
+	public int sizeInBytes() {
+		return bits.length*8 + zerosBefore.length*4 + labels.length + ends.length*8;
+	}
+}
@@ -0,0 +1,202 @@
+package wwf.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import wwf.solver.GameBoard.Dir;
+
+/**
+ * The part findMoves strategies that build moves around anchors have in
+ * common. An anchor is an empty square next to a tile; every move covers
+ * one, and is built from the leftmost (topmost) anchor it covers. Empty
+ * squares only take the letters their CrossChecks allow, so a move built
+ * makes words across the line wherever it makes any.
+ *
+ * Moves come out a line at a time in the order they are built in;
+ * ScanOrder puts them in the order findMoves would have found them in
+ * square by square, so that the result once sorted is the same list.
+ */
+abstract class MoveGenerator {
+	protected GameBoard g;
+	protected CrossChecks checks;
+	protected String letterTray;
+	protected int size;
+	// Tray letters not yet used, by letter, blanks not yet used, and both
+	protected int[] rack = new int[26];
+	protected int blanks = 0;
+	protected int tilesLeft = 0;
+	private ArrayList<TilePlacement> moves;
+
+	// The line being searched: its tiles (0 where empty), which of them are
+	// blanks, the letters allowed on its empty squares and its anchors
+	protected Dir dir;
+	protected int lineNo;
+	protected char[] line;
+	protected boolean[] lineBlank;
+	protected int[] cross;
+	protected boolean[] anchor;
+	// The move being built, by position in the line
+	protected char[] letters;
+	protected boolean[] placedBlank;
+
+	/**
+	 * checks are g's cross-checks for the words searched.
+	 */
+	protected MoveGenerator(GameBoard g, CrossChecks checks, String letterTray) {
+		this.g = g;
+		this.letterTray = letterTray.toUpperCase();
+		this.size = g.size();
+		this.checks = checks;
+		for(int i=0; i<this.letterTray.length(); i++) {
+			char c = this.letterTray.charAt(i);
+			if(c >= 'A' && c <= 'Z') {
+				rack[c - 'A']++;
+				tilesLeft++;
+			}
+			else if(c == '*') {
+				blanks++;
+				tilesLeft++;
+			}
+		}
+		line = new char[size];
+		lineBlank = new boolean[size];
+		cross = new int[size];
+		anchor = new boolean[size];
+		letters = new char[size];
+		placedBlank = new boolean[size];
+	}
+
+	/**
+	 * The moves along row (or column) n going in direction d, in no
+	 * particular order. Only reads the board and checks, so one generator
+	 * per line can run at the same time as others.
+	 */
+	ArrayList<TilePlacement> searchLine(Dir d, int n) {
+		dir = d;
+		lineNo = n;
+		moves = new ArrayList<TilePlacement>();
+		boolean anyAnchor = false;
+		for(int k=0; k<size; k++) {
+			int r = (d == Dir.RIGHT ? n : k);
+			int c = (d == Dir.RIGHT ? k : n);
+			Tile t = g.getTile(r, c);
+			line[k] = (t == null ? 0 : t.letter());
+			lineBlank[k] = (t != null && t.isBlank());
+			cross[k] = checks.mask(d, r, c);
+			anchor[k] = checks.isAnchor(r, c);
+			anyAnchor |= anchor[k];
+		}
+		if(!anyAnchor) {
+			return moves;
+		}
+		for(int k=0; k<size; k++) {
+			if(anchor[k]) {
+				searchAnchor(k);
+			}
+		}
+		return moves;
+	}
+
+	/**
+	 * Adds, by record, the moves whose leftmost anchor is square k of the
+	 * line.
+	 */
+	protected abstract void searchAnchor(int k);
+
+	protected boolean empty(int pos) {
+		return pos < 0 || pos >= size || line[pos] == 0;
+	}
+
+	/**
+	 * Scores the word in letters on squares lo .. hi and keeps it, if it is
+	 * more than a letter long.
+	 */
+	protected void record(int lo, int hi) {
+		if(hi == lo) {
+			return;
+		}
+		char[] mask = new char[hi-lo+1];
+		for(int k=lo; k<=hi; k++) {
+			boolean blank = (line[k] != 0 ? lineBlank[k] : placedBlank[k]);
+			mask[k-lo] = (blank ? 'B' : '.');
+		}
+		String word = new String(letters, lo, hi-lo+1);
+		String blankmask = new String(mask);
+		int r = (dir == Dir.RIGHT ? lineNo : lo);
+		int c = (dir == Dir.RIGHT ? lo : lineNo);
+		int pointVal = g.placementPoints(word, r, c, dir, blankmask, checks);
+		if(pointVal >= 0) {
+			moves.add(new TilePlacement(new Word(word, blankmask), pointVal, r, c, dir));
+		}
+	}
+
+	/**
+	 * The order findMoves finds moves in: going right before going down,
+	 * then by starting square, row first. From one square, words come in
+	 * the order the tray is tried in: at each empty square the letters by
+	 * where the first unused one is in the tray, a blank where the first
+	 * unused blank is and then alphabetically, and a word before the longer
+	 * words it starts.
+	 */
+	static class ScanOrder implements Comparator<TilePlacement> {
+		private GameBoard g;
+		private char[] tray;
+		private boolean[] used;
+
+		ScanOrder(GameBoard g, String letterTray) {
+			this.g = g;
+			this.tray = letterTray.toUpperCase().toCharArray();
+			this.used = new boolean[tray.length];
+		}
+
+		@Override
+		public int compare(TilePlacement a, TilePlacement b) {
+			if(a.dir != b.dir) {
+				return (a.dir == Dir.RIGHT ? -1 : 1);
+			}
+			if(a.r != b.r) {
+				return a.r - b.r;
+			}
+			if(a.c != b.c) {
+				return a.c - b.c;
+			}
+			Arrays.fill(used, false);
+			String wa = a.word.word, wb = b.word.word;
+			String ma = a.word.blankmask, mb = b.word.blankmask;
+			int dr = (a.dir == Dir.DOWN ? 1 : 0);
+			int dc = 1 - dr;
+			for(int p=0; ; p++) {
+				if(p == wa.length() || p == wb.length()) {
+					return wa.length() - wb.length();
+				}
+				if(g.getTile(a.r + p*dr, a.c + p*dc) != null) {
+					continue;
+				}
+				boolean blankA = (ma.charAt(p) == 'B');
+				boolean blankB = (mb.charAt(p) == 'B');
+				int ka = trayIndex(blankA ? '*' : wa.charAt(p));
+				int kb = trayIndex(blankB ? '*' : wb.charAt(p));
+				if(ka != kb) {
+					return ka - kb;
+				}
+				if(wa.charAt(p) != wb.charAt(p)) {
+					return wa.charAt(p) - wb.charAt(p);
+				}
+				used[ka] = true;
+			}
+		}
+
+		/**
+		 * Where the first unused tile c is in the tray.
+		 */
+		private int trayIndex(char c) {
+			for(int i=0; i<tray.length; i++) {
+				if(!used[i] && tray[i] == c) {
+					return i;
+				}
+			}
+			return tray.length;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package wwf.solver;
+
+/**
+ * Numbers the nodes of a lexicon by the DAWG node they were built from. Two
+ * nodes with the same number have the same words beneath them, so tables of
+ * facts about those words (WordIds, SubtreeInfo) need one entry per number
+ * rather than one per handle. The LOUDS, double-array and trie backends have
+ * several times more handles than the DAWG has nodes; they pay one int per
+ * handle here instead of a slot per handle in every table.
+ */
+final class NodeClasses {
+	// By handle, the DAWG node; null when nodes are numbered by handle
+	private int[] classes;
+	private int count;
+
+	private NodeClasses() {
+	}
+
+	/**
+	 * Numbers lex's nodes by their own handles.
+	 */
+	static NodeClasses handles(Lexicon lex) {
+		NodeClasses nc = new NodeClasses();
+		nc.count = lex.handleLimit();
+		return nc;
+	}
+
+	/**
+	 * The numbering of lex's nodes, where lex holds the same words as dawg
+	 * (and is usually built from it).
+	 */
+	static NodeClasses of(Lexicon lex, DawgLexicon dawg) {
+		NodeClasses nc = new NodeClasses();
+		nc.count = dawg.nodeCount();
+		if(lex != dawg) {
+			int limit = lex.handleLimit();
+			nc.classes = new int[limit];
+			for(int i=0; i<limit; i++) {
+				nc.classes[i] = -1;
+			}
+			nc.walk(lex, lex.root(), dawg, dawg.root());
+		}
+		return nc;
+	}
+
+	/**
+	 * Walks lex and dawg side by side from node and d, numbering every node
+	 * not reached before.
+	 */
+	private void walk(Lexicon lex, int node, DawgLexicon dawg, int d) {
+		if(classes[node] >= 0) {
+			return;
+		}
+		classes[node] = d;
+		for(int m = lex.childMask(node); m != 0; m &= m-1) {
+			char c = (char)('A' + Integer.numberOfTrailingZeros(m));
+			walk(lex, lex.getNextLetter(node, c), dawg, dawg.getNextLetter(d, c));
+		}
+	}
+
+	/**
+	 * The number of the node with the given handle, 0..count()-1.
+	 */
+	int of(int node) {
+		return (classes == null ? node : classes[node]);
+	}
+
+	int count() {
+		return count;
+	}
+}
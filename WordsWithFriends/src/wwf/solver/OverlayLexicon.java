@@ -0,0 +1,362 @@
+package wwf.solver;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A lexicon that adds and removes words on top of another one, which is
+ * left untouched, so that a few house words do not mean rebuilding the
+ * whole graph.
+ *
+ * Changes are copy-on-write. The nodes on the path of a changed word are
+ * copied into small delta nodes, each with its own 26 child handles and
+ * end-of-word flag, and the path through the copies is changed instead.
+ * Everything a delta node does not override still points into the base, so
+ * the base's handles stay valid: handles below baseLimit() are base nodes,
+ * the rest are delta nodes. Adding or removing a word costs a walk of its
+ * length plus at most that many new nodes.
+ *
+ * copy() is cheap too: the copy shares this overlay's delta nodes, which
+ * from then on neither of them changes - a change copies the nodes on its
+ * path again instead - and appends its new nodes past the shared ones.
+ * Replaced nodes stay behind until the next rebuild. Only one of the
+ * overlays sharing the nodes can append in place; any other takes its own
+ * copy of them first.
+ */
+public class OverlayLexicon implements Lexicon {
+	private Lexicon base;
+	private int baseLimit;
+	private int root;
+	// Delta node i has handle baseLimit+i
+	private int[][] kids = new int[16][];
+	private int[] masks = new int[16];
+	private boolean[] ends = new boolean[16];
+	// The base node each delta node was copied from, or NONE
+	private int[] copiedFrom = new int[16];
+	private int deltaCount = 0;
+	// Delta nodes below this are shared with a copy, and are copied rather
+	// than changed
+	private int frozen = 0;
+	// Words added that the base does not have, in the order first added, and
+	// their positions; the index is shared with copies, so it may hold words
+	// past addedCount and is added to while older snapshots read it
+	private String[] added = new String[16];
+	private int addedCount = 0;
+	private ConcurrentHashMap<String, Integer> addedIndex = new ConcurrentHashMap<String, Integer>();
+	// How far the shared arrays are used, by whichever overlay appends to them
+	private Tip tip = new Tip();
+	private int addCount = 0;
+	private int removedCount = 0;
+
+	private static class Tip {
+		int nodes;
+		int words;
+	}
+
+	public OverlayLexicon(Lexicon base) {
+		this.base = base;
+		this.baseLimit = base.handleLimit();
+		this.root = base.root();
+	}
+
+	public Lexicon base() {
+		return base;
+	}
+
+	/**
+	 * Handles from here on are delta nodes.
+	 */
+	public int baseLimit() {
+		return baseLimit;
+	}
+
+	/**
+	 * The base node that a node stands for: itself for a base node, the node
+	 * a delta node was copied from, or NONE for a node the base does not
+	 * have. Below a node, the base's words are the same as the overlay's
+	 * except along changed paths.
+	 */
+	public int baseOf(int node) {
+		return (node < baseLimit ? node : copiedFrom[node - baseLimit]);
+	}
+
+	/**
+	 * An independent copy, to change while this one stays as it is.
+	 */
+	public OverlayLexicon copy() {
+		OverlayLexicon o = new OverlayLexicon(base);
+		o.root = root;
+		o.kids = kids;
+		o.masks = masks;
+		o.ends = ends;
+		o.copiedFrom = copiedFrom;
+		o.deltaCount = deltaCount;
+		o.added = added;
+		o.addedCount = addedCount;
+		o.addedIndex = addedIndex;
+		o.tip = tip;
+		o.addCount = addCount;
+		o.removedCount = removedCount;
+		frozen = deltaCount;
+		o.frozen = deltaCount;
+		return o;
+	}
+
+	/**
+	 * Makes sure the slots past this overlay's nodes and words are its own
+	 * to fill: they are unless an overlay sharing them has filled some.
+	 */
+	private void claim() {
+		if(tip.nodes == deltaCount && tip.words == addedCount) {
+			return;
+		}
+		kids = Arrays.copyOf(kids, kids.length);
+		masks = masks.clone();
+		ends = ends.clone();
+		copiedFrom = copiedFrom.clone();
+		added = added.clone();
+		addedIndex = new ConcurrentHashMap<String, Integer>();
+		for(int i=0; i<addedCount; i++) {
+			addedIndex.put(added[i], i);
+		}
+		tip = new Tip();
+		tip.nodes = deltaCount;
+		tip.words = addedCount;
+	}
+
+	/**
+	 * Whether any word has been added or removed.
+	 */
+	public boolean isChanged() {
+		return deltaCount > 0;
+	}
+
+	/**
+	 * Adds a word, upper-cased with anything other than letters dropped.
+	 * Returns false if it was already a word.
+	 */
+	public boolean addWord(String word) {
+		char[] w = normalize(word);
+		if(w.length == 0 || contains(w)) {
+			return false;
+		}
+		int[] path = copyPath(w);
+		setEnd(path[w.length], true);
+		String s = new String(w);
+		if(indexOf(s) < 0 && !inBase(w)) {
+			claim();
+			if(addedCount == added.length) {
+				added = Arrays.copyOf(added, addedCount*2);
+			}
+			added[addedCount] = s;
+			addedIndex.put(s, addedCount);
+			tip.words = ++addedCount;
+		}
+		addCount++;
+		return true;
+	}
+
+	/**
+	 * Removes a word. Returns false if it was not a word.
+	 */
+	public boolean removeWord(String word) {
+		char[] w = normalize(word);
+		if(w.length == 0 || !contains(w)) {
+			return false;
+		}
+		int[] path = copyPath(w);
+		setEnd(path[w.length], false);
+		// Drop the nodes that no longer lead to any word
+		for(int d=w.length; d>0; d--) {
+			int i = path[d] - baseLimit;
+			if(ends[i] || masks[i] != 0) {
+				break;
+			}
+			setKid(path[d-1], w[d-1], NONE);
+		}
+		removedCount++;
+		return true;
+	}
+
+	/**
+	 * Words added that the base does not have, whether still present or not.
+	 */
+	public List<String> addedWords() {
+		return Collections.unmodifiableList(Arrays.asList(added).subList(0, addedCount));
+	}
+
+	/**
+	 * Position of w[offset .. offset+length) in addedWords(), or -1.
+	 */
+	public int addedIndex(char[] w, int offset, int length) {
+		return indexOf(new String(w, offset, length).toUpperCase());
+	}
+
+	private int indexOf(String s) {
+		Integer i = addedIndex.get(s);
+		return (i == null || i >= addedCount ? -1 : i);
+	}
+
+	/**
+	 * How many more words there are than in the base: addWord calls that
+	 * added a word less removeWord calls that removed one.
+	 */
+	public int wordCountChange() {
+		return addCount - removedCount;
+	}
+
+	/**
+	 * Number of removeWord calls that removed a word.
+	 */
+	public int removedCount() {
+		return removedCount;
+	}
+
+	private static char[] normalize(String word) {
+		char[] w = new char[word.length()];
+		int len = 0;
+		for(int i=0; i<word.length(); i++) {
+			char c = Character.toUpperCase(word.charAt(i));
+			if(c >= 'A' && c <= 'Z') {
+				w[len++] = c;
+			}
+		}
+		return Arrays.copyOf(w, len);
+	}
+
+	private boolean contains(char[] w) {
+		int n = root;
+		for(int i=0; i<w.length && n != NONE; i++) {
+			n = getNextLetter(n, w[i]);
+		}
+		return n != NONE && isEndOfWord(n);
+	}
+
+	private boolean inBase(char[] w) {
+		int n = base.root();
+		for(int i=0; i<w.length && n != NONE; i++) {
+			n = base.getNextLetter(n, w[i]);
+		}
+		return n != NONE && base.isEndOfWord(n);
+	}
+
+	/**
+	 * Makes every node on w's path a delta node of this overlay's own,
+	 * creating missing ones, and returns the path (path[d] is reached by the
+	 * first d letters).
+	 */
+	private int[] copyPath(char[] w) {
+		int[] path = new int[w.length+1];
+		if(root < baseLimit + frozen) {
+			root = copy(root);
+		}
+		path[0] = root;
+		for(int d=0; d<w.length; d++) {
+			int next = getNextLetter(path[d], w[d]);
+			if(next < baseLimit + frozen) {
+				next = copy(next);
+				setKid(path[d], w[d], next);
+			}
+			path[d+1] = next;
+		}
+		return path;
+	}
+
+	/**
+	 * A new delta node with the children and end flag of node n, or with
+	 * none if n is NONE.
+	 */
+	private int copy(int n) {
+		claim();
+		if(deltaCount == kids.length) {
+			kids = Arrays.copyOf(kids, deltaCount*2);
+			masks = Arrays.copyOf(masks, deltaCount*2);
+			ends = Arrays.copyOf(ends, deltaCount*2);
+			copiedFrom = Arrays.copyOf(copiedFrom, deltaCount*2);
+		}
+		int[] k;
+		int mask = 0;
+		boolean end = false;
+		int from = n;
+		if(n >= baseLimit) {
+			int i = n - baseLimit;
+			k = kids[i].clone();
+			mask = masks[i];
+			end = ends[i];
+			from = copiedFrom[i];
+		}
+		else {
+			k = new int[26];
+			Arrays.fill(k, NONE);
+			if(n != NONE) {
+				mask = base.childMask(n);
+				end = base.isEndOfWord(n);
+				for(int m = mask; m != 0; m &= m-1) {
+					int l = Integer.numberOfTrailingZeros(m);
+					k[l] = base.getNextLetter(n, (char)('A' + l));
+				}
+			}
+		}
+		kids[deltaCount] = k;
+		masks[deltaCount] = mask;
+		ends[deltaCount] = end;
+		copiedFrom[deltaCount] = from;
+		tip.nodes = deltaCount + 1;
+		return baseLimit + deltaCount++;
+	}
+
+	private void setKid(int node, char c, int child) {
+		int i = node - baseLimit;
+		int l = c - 'A';
+		kids[i][l] = child;
+		if(child == NONE) {
+			masks[i] &= ~(1 << l);
+		}
+		else {
+			masks[i] |= 1 << l;
+		}
+	}
+
+	private void setEnd(int node, boolean end) {
+		ends[node - baseLimit] = end;
+	}
+
+	@Override
+	public int root() {
+		return root;
+	}
+
+	@Override
+	public int getNextLetter(int node, char c) {
+		if(node < baseLimit) {
+			return base.getNextLetter(node, c);
+		}
+		int l = Character.toUpperCase(c) - 'A';
+		if(l < 0 || l >= 26) {
+			return NONE;
+		}
+		return kids[node - baseLimit][l];
+	}
+
+	@Override
+	public boolean isEndOfWord(int node) {
+		return (node < baseLimit ? base.isEndOfWord(node) : ends[node - baseLimit]);
+	}
+
+	@Override
+	public int childMask(int node) {
+		return (node < baseLimit ? base.childMask(node) : masks[node - baseLimit]);
+	}
+
+	@Override
+	public int nodeCount() {
+		return base.nodeCount() + deltaCount;
+	}
+
+	@Override
+	public int handleLimit() {
+		return baseLimit + deltaCount;
+	}
+}
@@ -0,0 +1,196 @@
+package wwf.solver;
+
+/**
+ * Membership test for the words of up to MAX_LETTERS letters, in a constant
+ * number of probes and without allocating.
+ *
+ * A word is packed into a long at 5 bits a letter, 'A' as 1 up to 'Z' as 26,
+ * first letter highest; no letter packs to 0, so the length is part of the
+ * key. The keys are put through a minimal perfect hash (hash and displace):
+ * keys are split into buckets by one hash, and each bucket, largest first,
+ * is given the displacement that sends all its keys to free slots under a
+ * second hash. Buckets of one key go straight into a free slot, recorded as
+ * a negative displacement. Every word gets its own slot out of exactly as
+ * many slots as there are words, and the slot holds the key so that words
+ * not in the list can be told apart.
+ */
+public class PerfectWordHash {
+	public static final int MAX_LETTERS = 12;
+	private static final int KEYS_PER_BUCKET = 4;
+
+	private long[] slots;
+	private int[] displacement;
+
+	private PerfectWordHash() {
+	}
+
+	/**
+	 * Hashes every word of up to MAX_LETTERS letters numbered by ids.
+	 */
+	public static PerfectWordHash build(WordIds ids) {
+		int n = 0;
+		long[] keys = new long[ids.wordCount()];
+		char[] buf = new char[MAX_LETTERS];
+		for(int id=0; id<ids.wordCount(); id++) {
+			int len = ids.word(id, buf);
+			if(len >= 1 && len <= MAX_LETTERS) {
+				keys[n++] = pack(buf, 0, len);
+			}
+		}
+		return build(keys, n);
+	}
+
+	private static PerfectWordHash build(long[] keys, int n) {
+		PerfectWordHash h = new PerfectWordHash();
+		int buckets = Math.max(1, n / KEYS_PER_BUCKET);
+		h.displacement = new int[buckets];
+		h.slots = new long[Math.max(1, n)];
+
+		// Group the keys by bucket
+		int[] bucketSize = new int[buckets];
+		int[] bucketOf = new int[n];
+		for(int i=0; i<n; i++) {
+			bucketOf[i] = bucket(keys[i], buckets);
+			bucketSize[bucketOf[i]]++;
+		}
+		int[] bucketStart = new int[buckets+1];
+		for(int b=0; b<buckets; b++) {
+			bucketStart[b+1] = bucketStart[b] + bucketSize[b];
+		}
+		int[] fill = new int[buckets];
+		long[] grouped = new long[n];
+		for(int i=0; i<n; i++) {
+			int b = bucketOf[i];
+			grouped[bucketStart[b] + fill[b]++] = keys[i];
+		}
+		// Buckets by size, largest first (counting sort)
+		int maxSize = 0;
+		for(int b=0; b<buckets; b++) {
+			maxSize = Math.max(maxSize, bucketSize[b]);
+		}
+		int[] sizeStart = new int[maxSize+2];
+		for(int b=0; b<buckets; b++) {
+			sizeStart[maxSize - bucketSize[b] + 1]++;
+		}
+		for(int s=0; s<=maxSize; s++) {
+			sizeStart[s+1] += sizeStart[s];
+		}
+		int[] order = new int[buckets];
+		for(int b=0; b<buckets; b++) {
+			order[sizeStart[maxSize - bucketSize[b]]++] = b;
+		}
+
+		boolean[] taken = new boolean[h.slots.length];
+		int[] tried = new int[maxSize];
+		int nextFree = 0;
+		for(int b : order) {
+			int size = bucketSize[b];
+			int first = bucketStart[b];
+			if(size == 0) {
+				continue;
+			}
+			if(size == 1) {
+				while(taken[nextFree]) {
+					nextFree++;
+				}
+				taken[nextFree] = true;
+				h.slots[nextFree] = grouped[first];
+				h.displacement[b] = -(nextFree+1);
+				continue;
+			}
+			for(int d=0; ; d++) {
+				int placed = 0;
+				for(; placed<size; placed++) {
+					int s = slot(grouped[first+placed], d, h.slots.length);
+					boolean clash = taken[s];
+					for(int j=0; j<placed && !clash; j++) {
+						clash = (tried[j] == s);
+					}
+					if(clash) {
+						break;
+					}
+					tried[placed] = s;
+				}
+				if(placed == size) {
+					for(int j=0; j<size; j++) {
+						taken[tried[j]] = true;
+						h.slots[tried[j]] = grouped[first+j];
+					}
+					h.displacement[b] = d;
+					break;
+				}
+			}
+		}
+		return h;
+	}
+
+	private static long mix(long x) {
+		x ^= x >>> 33;
+		x *= 0xFF51AFD7ED558CCDL;
+		x ^= x >>> 33;
+		x *= 0xC4CEB9FE1A85EC53L;
+		x ^= x >>> 33;
+		return x;
+	}
+
+	private static int bucket(long key, int buckets) {
+		return (int)((mix(key) >>> 1) % buckets);
+	}
+
+	private static int slot(long key, int d, int slotCount) {
+		return (int)((mix(key ^ (0x9E3779B97F4A7C15L * (d+1))) >>> 1) % slotCount);
+	}
+
+	/**
+	 * Packs w[offset .. offset+length) as a key, or returns -1 if it is too
+	 * long or has a character that is not a letter.
+	 */
+	public static long pack(char[] w, int offset, int length) {
+		if(length > MAX_LETTERS) {
+			return -1;
+		}
+		long key = 0;
+		for(int i=offset; i<offset+length; i++) {
+			int code = (w[i] | 0x20) - 'a';
+			if(code < 0 || code >= 26) {
+				return -1;
+			}
+			key = (key << 5) | (code+1);
+		}
+		return key;
+	}
+
+	public static long pack(CharSequence w) {
+		if(w.length() > MAX_LETTERS) {
+			return -1;
+		}
+		long key = 0;
+		for(int i=0; i<w.length(); i++) {
+			int code = (w.charAt(i) | 0x20) - 'a';
+			if(code < 0 || code >= 26) {
+				return -1;
+			}
+			key = (key << 5) | (code+1);
+		}
+		return key;
+	}
+
+	/**
+	 * Whether the packed word is one of the words hashed.
+	 */
+	public boolean contains(long key) {
+		if(key <= 0) {
+			return false;
+		}
+		int d = displacement[bucket(key, displacement.length)];
+		int s = (d < 0 ? -d-1 : slot(key, d, slots.length));
+		return slots[s] == key;
+	}
+
+	/**
+	 * Number of words hashed.
+	 */
+	public int size() {
+		return slots.length;
+	}
+}
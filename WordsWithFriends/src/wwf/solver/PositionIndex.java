@@ -0,0 +1,299 @@
+package wwf.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Finds the words that fit a restrictions string (see
+ * Dictionary.findWordsRestricted) by the letters fixed on the board rather
+ * than by walking the word graph.
+ *
+ * The words of each length are numbered in alphabetical order, and for each
+ * length, position and letter there is a bitset of the words with that
+ * letter there. The words of a given length that fit the board letters are
+ * the AND of the bitsets of those letters' positions. On an empty square
+ * the word's letter has to be one in the tray or else take a blank, so the
+ * bitsets of the tray's letters there are ORed, and words are counted off
+ * bit-parallel by how many such squares they miss; those missing more than
+ * there are blanks are dropped. Only the words left are looked at one by
+ * one, to check how many of each letter they need.
+ *
+ * The words are the WordIds ids, so the index keeps no word text of its own.
+ */
+public class PositionIndex {
+	// Longer words cannot be played on any board this solver handles
+	public static final int MAX_LETTERS = 32;
+
+	private WordIds words;
+	// byLength[len][i]: id of the i-th word of len letters
+	private int[][] byLength;
+	// bits[len][p*26 + l]: bit i set if word i of len letters has letter l
+	// at position p; null where no word does
+	private long[][][] bits;
+
+	private PositionIndex() {
+	}
+
+	/**
+	 * Indexes every word numbered by words of up to MAX_LETTERS letters.
+	 */
+	public static PositionIndex build(WordIds words) {
+		PositionIndex idx = new PositionIndex();
+		idx.words = words;
+		int n = words.wordCount();
+		char[] buf = new char[MAX_LETTERS];
+		int[] count = new int[MAX_LETTERS+1];
+		int[] lengths = new int[n];
+		for(int id=0; id<n; id++) {
+			lengths[id] = words.word(id, buf);
+			if(lengths[id] <= MAX_LETTERS) {
+				count[lengths[id]]++;
+			}
+		}
+		idx.byLength = new int[MAX_LETTERS+1][];
+		idx.bits = new long[MAX_LETTERS+1][][];
+		for(int len=0; len<=MAX_LETTERS; len++) {
+			idx.byLength[len] = new int[count[len]];
+			idx.bits[len] = new long[len*26][];
+		}
+		int[] fill = new int[MAX_LETTERS+1];
+		for(int id=0; id<n; id++) {
+			int len = lengths[id];
+			if(len > MAX_LETTERS) {
+				continue;
+			}
+			words.word(id, buf);
+			int i = fill[len]++;
+			idx.byLength[len][i] = id;
+			long[][] sets = idx.bits[len];
+			for(int p=0; p<len; p++) {
+				int slot = p*26 + (buf[p] - 'A');
+				if(sets[slot] == null) {
+					sets[slot] = new long[(count[len] + 63) >>> 6];
+				}
+				sets[slot][i >>> 6] |= 1L << i;
+			}
+		}
+		return idx;
+	}
+
+	/**
+	 * A search for the words fitting one restrictions string with one tray.
+	 */
+	public Query query(String letters, String restrictions, String blanks) {
+		return new Query(letters, restrictions, blanks);
+	}
+
+	public class Query {
+		private String restrictions;
+		private String blanks;
+		private int[] trayLeft = new int[26];
+		private int blanksLeft = 0;
+		private char[] buf = new char[MAX_LETTERS];
+		// Empty squares of the word being placed
+		private int[] dots = new int[MAX_LETTERS];
+		private int dotCount;
+		private char[] mask = new char[MAX_LETTERS];
+		// Distinct letters in the tray
+		private int trayLetters = 0;
+		// misses[j]: words missing at most j empty squares so far
+		private long[][] misses;
+		private long[] allowed;
+		private ArrayList<Word> results = new ArrayList<Word>();
+
+		private Query(String letters, String restrictions, String blanks) {
+			this.restrictions = restrictions.toUpperCase();
+			this.blanks = blanks;
+			for(int i=0; i<letters.length(); i++) {
+				char c = Character.toUpperCase(letters.charAt(i));
+				if(c >= 'A' && c <= 'Z') {
+					trayLeft[c - 'A']++;
+					trayLetters |= 1 << (c - 'A');
+				}
+				else if(c == '*') {
+					blanksLeft++;
+				}
+			}
+		}
+
+		/**
+		 * Every indexed word that fits, with each way of using the blanks:
+		 * by length, then in alphabetical order.
+		 */
+		public ArrayList<Word> matchAll() {
+			int max = Math.min(restrictions.length(), MAX_LETTERS);
+			for(int len=2; len<=max; len++) {
+				// A word cannot end right before a board letter
+				if(len < restrictions.length() && Character.isLetter(restrictions.charAt(len))) {
+					continue;
+				}
+				int[] ids = byLength[len];
+				long[] found = (ids.length == 0 ? null : filter(len));
+				if(found == null) {
+					continue;
+				}
+				for(int b=0; (b << 6) < ids.length; b++) {
+					for(long m = found[b]; m != 0; m &= m-1) {
+						int i = (b << 6) + Long.numberOfTrailingZeros(m);
+						words.word(ids[i], buf);
+						tryWord(buf, len);
+					}
+				}
+			}
+			return results;
+		}
+
+		/**
+		 * The words of len letters with the board letters in place, and with
+		 * no more empty squares than there are blanks holding a letter the
+		 * tray does not have. null if there are none, or if the word would
+		 * not use any tiles.
+		 */
+		private long[] filter(int len) {
+			int blocks = (byLength[len].length + 63) >>> 6;
+			int dotsInWord = 0;
+			for(int p=0; p<len; p++) {
+				if(!Character.isLetter(restrictions.charAt(p))) {
+					dotsInWord++;
+				}
+			}
+			if(dotsInWord == 0) {
+				return null;
+			}
+			int k = Math.min(blanksLeft, dotsInWord);
+			if(misses == null || misses.length < k+1 || misses[0].length < blocks) {
+				misses = new long[k+1][Math.max(blocks, misses == null ? 0 : misses[0].length)];
+				allowed = new long[misses[0].length];
+			}
+			int extra = byLength[len].length & 63;
+			for(int j=0; j<=k; j++) {
+				Arrays.fill(misses[j], 0, blocks, -1L);
+				if(extra != 0) {
+					misses[j][blocks-1] = (1L << extra) - 1;
+				}
+			}
+			long[][] sets = bits[len];
+			for(int p=0; p<len; p++) {
+				char c = restrictions.charAt(p);
+				if(Character.isLetter(c)) {
+					long[] set = (c >= 'A' && c <= 'Z' ? sets[p*26 + (c - 'A')] : null);
+					if(set == null) {
+						return null;
+					}
+					for(int j=0; j<=k; j++) {
+						long[] m = misses[j];
+						for(int b=0; b<blocks; b++) {
+							m[b] &= set[b];
+						}
+					}
+					continue;
+				}
+				if(k == dotsInWord) {
+					// Blanks enough to fill every empty square
+					continue;
+				}
+				Arrays.fill(allowed, 0, blocks, 0L);
+				for(int t = trayLetters; t != 0; t &= t-1) {
+					long[] set = sets[p*26 + Integer.numberOfTrailingZeros(t)];
+					if(set != null) {
+						for(int b=0; b<blocks; b++) {
+							allowed[b] |= set[b];
+						}
+					}
+				}
+				// At most j missed after this square: at most j before and
+				// not missed here, or at most j-1 before
+				for(int j=k; j>=1; j--) {
+					long[] m = misses[j];
+					long[] less = misses[j-1];
+					for(int b=0; b<blocks; b++) {
+						m[b] = (m[b] & allowed[b]) | less[b];
+					}
+				}
+				long[] m = misses[0];
+				for(int b=0; b<blocks; b++) {
+					m[b] &= allowed[b];
+				}
+			}
+			long[] found = misses[k];
+			long any = 0;
+			for(int b=0; b<blocks; b++) {
+				any |= found[b];
+			}
+			return (any == 0 ? null : found);
+		}
+
+		/**
+		 * Adds the ways to place w[0 .. len) here with the tray, if there are
+		 * any. Also checks the board letters, so it takes words from outside
+		 * the index too.
+		 */
+		public void tryWord(char[] w, int len) {
+			if(len < 2 || len > restrictions.length() || len > MAX_LETTERS) {
+				return;
+			}
+			if(len < restrictions.length() && Character.isLetter(restrictions.charAt(len))) {
+				return;
+			}
+			dotCount = 0;
+			long fixedBlanks = 0;
+			for(int p=0; p<len; p++) {
+				char r = restrictions.charAt(p);
+				if(Character.isLetter(r)) {
+					if(r != w[p]) {
+						return;
+					}
+					if(blanks.charAt(p) == 'B') {
+						fixedBlanks |= 1L << p;
+					}
+				}
+				else {
+					dots[dotCount++] = p;
+				}
+			}
+			if(dotCount == 0) {
+				return;
+			}
+			// Letters the tray is short of have to be blanks
+			int missing = 0;
+			for(int k=0; k<dotCount; k++) {
+				int l = w[dots[k]] - 'A';
+				if(--trayLeft[l] < 0) {
+					missing++;
+				}
+			}
+			for(int k=0; k<dotCount; k++) {
+				trayLeft[w[dots[k]] - 'A']++;
+			}
+			if(missing <= blanksLeft) {
+				place(w, len, 0, fixedBlanks);
+			}
+		}
+
+		/**
+		 * Fills the empty squares from k on with a tray letter or a blank,
+		 * every way that the tray allows.
+		 */
+		private void place(char[] w, int len, int k, long blankBits) {
+			if(k == dotCount) {
+				for(int p=0; p<len; p++) {
+					mask[p] = ((blankBits & (1L << p)) != 0 ? 'B' : '.');
+				}
+				results.add(new Word(new String(w, 0, len), new String(mask, 0, len)));
+				return;
+			}
+			int p = dots[k];
+			int l = w[p] - 'A';
+			if(trayLeft[l] > 0) {
+				trayLeft[l]--;
+				place(w, len, k+1, blankBits);
+				trayLeft[l]++;
+			}
+			if(blanksLeft > 0) {
+				blanksLeft--;
+				place(w, len, k+1, blankBits | (1L << p));
+				blanksLeft++;
+			}
+		}
+	}
+}
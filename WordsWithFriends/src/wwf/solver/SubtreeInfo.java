@@ -0,0 +1,89 @@
+package wwf.solver;
+
+/**
+ * Facts about the words beneath each node of a lexicon, worked out once so
+ * that a search can tell a subtree is hopeless without walking into it.
+ */
+public class SubtreeInfo {
+	private Lexicon lex;
+	private NodeClasses classes;
+	private boolean[] done;
+	// Per node number: bit k set if a word ends k letters below the node
+	private long[] lengths;
+	// Per node number: letters every continuation below the node uses at
+	// least once, and at least twice
+	private int[] needOnce;
+	private int[] needTwice;
+
+	private SubtreeInfo(Lexicon lex, NodeClasses classes) {
+		this.lex = lex;
+		this.classes = classes;
+	}
+
+	public static SubtreeInfo build(Lexicon lex) {
+		return build(lex, NodeClasses.handles(lex));
+	}
+
+	/**
+	 * Keeps the facts per node number rather than per handle, like
+	 * WordIds.build(Lexicon, NodeClasses).
+	 */
+	static SubtreeInfo build(Lexicon lex, NodeClasses classes) {
+		SubtreeInfo info = new SubtreeInfo(lex, classes);
+		int limit = classes.count();
+		info.done = new boolean[limit];
+		info.lengths = new long[limit];
+		info.needOnce = new int[limit];
+		info.needTwice = new int[limit];
+		info.visit(lex.root());
+		info.done = null;
+		return info;
+	}
+
+	private int visit(int node) {
+		int k = classes.of(node);
+		if(done[k]) {
+			return k;
+		}
+		done[k] = true;
+		boolean end = lex.isEndOfWord(node);
+		long len = (end ? 1L : 0L);
+		// Stopping here needs nothing, otherwise what every child needs
+		int once = (end ? 0 : (1 << 26) - 1);
+		int twice = once;
+		for(int m = lex.childMask(node); m != 0; m &= m-1) {
+			int bit = m & -m;
+			int child = visit(lex.getNextLetter(node, (char)('A' + Integer.numberOfTrailingZeros(m))));
+			len |= lengths[child] << 1;
+			once &= needOnce[child] | bit;
+			twice &= needTwice[child] | (needOnce[child] & bit);
+		}
+		lengths[k] = len;
+		needOnce[k] = once;
+		needTwice[k] = twice;
+		return k;
+	}
+
+	/**
+	 * Bit k is set if some word ends k letters below node (bit 0: node itself
+	 * ends a word). Lengths past 63 are not recorded.
+	 */
+	public long lengths(int node) {
+		return lengths[classes.of(node)];
+	}
+
+	/**
+	 * Letters (bit i for 'A'+i) that every word through node uses at least
+	 * once after it.
+	 */
+	public int needOnce(int node) {
+		return needOnce[classes.of(node)];
+	}
+
+	/**
+	 * Letters that every word through node uses at least twice after it.
+	 */
+	public int needTwice(int node) {
+		return needTwice[classes.of(node)];
+	}
+}
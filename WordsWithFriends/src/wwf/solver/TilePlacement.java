@@ -7,6 +7,7 @@ public class TilePlacement implements Comparable<TilePlacement>{
 	public int r; // Row on board of first letter of the main word for this tile placement
 	public int c; // Col on board of first letter of the main word for this tile placement
 	public Dir dir; // Direction of the main word (DOWN or RIGHT)
+	public int lexicons = 1; // Bit i set if the i-th dictionary searched accepts this move (see Dictionary.findMovesAcross)
 	
 	public TilePlacement(Word word, int points, int r, int c, Dir dir) {
 		this.word = word;
@@ -0,0 +1,61 @@
+package wwf.solver;
+
+import java.util.ArrayList;
+
+/**
+ * The plain DictionaryNode object trie, used as-is. Kept mainly as a baseline
+ * to compare the compact backends against.
+ */
+public class TrieLexicon implements Lexicon {
+	private DictionaryNode[] nodes;
+
+	public TrieLexicon(DictionaryNode root) {
+		// Number the nodes so they can be handed out as int handles
+		ArrayList<DictionaryNode> all = new ArrayList<DictionaryNode>();
+		ArrayList<DictionaryNode> stack = new ArrayList<DictionaryNode>();
+		stack.add(root);
+		while(!stack.isEmpty()) {
+			DictionaryNode dn = stack.remove(stack.size()-1);
+			dn.id = all.size();
+			all.add(dn);
+			for(char c = 'Z'; c >= 'A'; c--) {
+				DictionaryNode child = dn.getNextLetter(c);
+				if(child != null) {
+					stack.add(child);
+				}
+			}
+		}
+		nodes = all.toArray(new DictionaryNode[all.size()]);
+	}
+
+	@Override
+	public int root() {
+		return 0;
+	}
+
+	@Override
+	public int getNextLetter(int node, char c) {
+		DictionaryNode next = nodes[node].getNextLetter(c);
+		return next == null ? NONE : next.id;
+	}
+
+	@Override
+	public boolean isEndOfWord(int node) {
+		return nodes[node].isEndOfWord();
+	}
+
+	@Override
+	public int childMask(int node) {
+		return nodes[node].childMask();
+	}
+
+	@Override
+	public int nodeCount() {
+		return nodes.length;
+	}
+
+	@Override
+	public int handleLimit() {
+		return nodes.length;
+	}
+}
@@ -9,6 +9,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Stack;
 
@@ -91,8 +92,11 @@ public class WWFSolverGUI extends JFrame {
 	
 	// Engines that handle all back-end work
 	GameBoard board;
-	Dictionary dict;
-	private static String[] dictionaryFiles = {"/resource/CROSSWD.TXT", "/resource/CRSWD-D.TXT"};
+	// The dictionary for each game type, see LexiconRegistry
+	LexiconRegistry lexicons;
+	static String[] dictionaryFiles = {"/resource/CROSSWD.TXT", "/resource/CRSWD-D.TXT"};
+	// Compiled form of dictionaryFiles, see LexiconCompiler
+	public static final String lexiconImage = "wwf_lexicon.bin";
 
 	@SuppressWarnings("unused")
 	public static void main(String args[]) {
@@ -143,21 +147,24 @@ public class WWFSolverGUI extends JFrame {
 		this.setJMenuBar(menuBar);
 		setupMenuBar();
 		
-		// Load solving engine (load dictionaries)
-		dict = new Dictionary();
-		for(String s : dictionaryFiles) {
-			try {
-				Dictionary.makeDictionary(dict, s);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
+		// Load solving engine (load dictionaries) in the background, so the
+		// window can come up straight away. Map the compiled lexicon if there
+		// is one, otherwise read the word lists and compile it for next time.
+		// Both game types use the same word lists and image for now; the
+		// other type's dictionary is only loaded if it is played.
+		lexicons = new LexiconRegistry(Dictionary.Backend.DAWG);
+		lexicons.register(GameBoard.WWF, new File(lexiconImage), dictionaryFiles);
+		lexicons.register(GameBoard.SCRABBLE, new File(lexiconImage), dictionaryFiles);
+		lexicons.forGameType(GameBoard.WWF);
 		
 		// Setup board
 		board = new GameBoard(BOARD_SIZE, GameBoard.WWF);
 		
 		// Dont enable gameplay until new game started or game loaded
-		queryButtonPressed();
+		// (no empty search here, it would wait for the dictionary)
+		resetHighlighting();
+		showNoMoves();
+		undoButton.setEnabled(false);
 		setGameplayEnabled(false);
 		
 		// Make the window appear once all is finished
@@ -722,6 +729,11 @@ public class WWFSolverGUI extends JFrame {
 		return result;
 	}
 	
+	private void showNoMoves() {
+		queryDataList.setListData(new String[] {"<none>"});
+		pointDispLabel.setText("No possible moves with these letters.");
+	}
+	
 	private void queryButtonPressed() {
 		String letters = letterTrayField.getText();
 		letters = letters.replace(" ", "");
@@ -765,6 +777,7 @@ public class WWFSolverGUI extends JFrame {
 		else {
 			long timeTaken = System.currentTimeMillis();
 			ArrayList<TilePlacement> found;
+			Dictionary dict = lexicons.forBoard(board);
 			if(board.isEmpty()) {
 				found = dict.findFirstMoves(board, letters);
 			}
@@ -772,8 +785,7 @@ public class WWFSolverGUI extends JFrame {
 				found = dict.findMoves(board, letters);
 			}
 			if(found.size() == 0) {
-				queryDataList.setListData(new String[] {"<none>"});
-				pointDispLabel.setText("No possible moves with these letters.");
+				showNoMoves();
 			}
 			else {
 				queryDataList.setListData(found.toArray());
@@ -832,7 +844,7 @@ public class WWFSolverGUI extends JFrame {
 		}
 		else {
 			ArrayList<TilePlacement> found;
-			found = board.findLocationsForWord(word, dict);
+			found = board.findLocationsForWord(word, lexicons.forBoard(board));
 			
 			if(found.size() == 0) {
 				opponentDataList.setListData(new String[] {"<none>"});
@@ -5,10 +5,14 @@ import wwf.solver.GameBoard.Dir;
 
 public class WWFTester {
 
-	private static Dictionary dict = new Dictionary();
+	private static Dictionary dict;
 	private static String[] dictionaryFiles = {"/resource/CROSSWD.TXT", "/resource/CRSWD-D.TXT"};
 	
+	// Optional argument: the Dictionary.Backend to use (DAWG, DOUBLE_ARRAY, LOUDS, TRIE)
 	public static void main(String[] args) {
+		Dictionary.Backend backend = (args.length > 0 ? Dictionary.Backend.valueOf(args[0]) : Dictionary.Backend.DAWG);
+		System.out.println("Using " + backend + " backend.");
+		dict = new Dictionary(backend);
 		for(String s : dictionaryFiles) {
 			try {
 				Dictionary.makeDictionary(dict, s);
@@ -16,6 +20,9 @@ public class WWFTester {
 				e.printStackTrace();
 			}
 		}
+		long time = System.currentTimeMillis();
+		dict.compile();
+		System.out.println("Compiling took " + (System.currentTimeMillis()-time) + " ms.");
 		
 		int size = 15;
 		GameBoard board = new GameBoard(size, GameBoard.WWF);
@@ -51,7 +58,7 @@ public class WWFTester {
 		
 		board.dispBoard();
 		
-		long time = System.currentTimeMillis();
+		time = System.currentTimeMillis();
 		ArrayList<TilePlacement> ss = dict.findMoves(board, "IWGYREA");
 		for(TilePlacement t : ss) {
 			System.out.println(t.word + " - " + t.points + " pts - (" + t.r + "," + t.c + ") - " + (t.dir == Dir.DOWN ? "down" : "right"));
@@ -59,6 +66,23 @@ public class WWFTester {
 		System.out.println(ss.size() + " results.");
 		System.out.println("Analysis took " + (System.currentTimeMillis()-time) + " ms.");
 		
+		// The GUI writes every square before each query; only the lines of
+		// squares that really changed should be recomputed
+		for(int i=0; i<size; i++) {
+			for(int j=0; j<size; j++) {
+				if(squares[i][j] != '-') {
+					board.setSquare(i,j,squares[i][j],board.getTile(i,j).isBlank());
+				}
+				else {
+					board.clearSquare(i,j);
+				}
+			}
+		}
+		board.setSquare(14,14,'S',false);
+		int dirty = board.dirtyLines();
+		System.out.println("Lines to recompute after one edit: " + dirty + (dirty == 2 ? "" : " - expected 2!"));
+		board.clearSquare(14,14);
+		
 	}
 	
 
@@ -15,6 +15,11 @@ public class Word {
 		}
 	}
 	
+	public Word(String word, String blankmask) {
+		this.word = word;
+		this.blankmask = blankmask;
+	}
+	
 	public void addLetter(char letter, boolean isBlank) {
 		word += Character.toUpperCase(letter);
 		blankmask += (isBlank ? 'B' : '.');
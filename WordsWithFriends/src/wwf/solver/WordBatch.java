@@ -0,0 +1,249 @@
+package wwf.solver;
+
+import java.util.Arrays;
+
+/**
+ * A batch of candidate words to be checked against a Dictionary in one go
+ * (see Dictionary.checkWords and Dictionary.areWords). Words are kept as
+ * letter codes in one flat array, so adding a word allocates nothing once
+ * the batch has grown to size, and a batch can be cleared and reused.
+ *
+ * A word can be added whole, or a letter at a time with append and endWord.
+ * Letters are case-insensitive; any other character makes the word invalid.
+ */
+public class WordBatch {
+	private static final byte NOT_A_LETTER = 26;
+
+	private byte[] codes = new byte[64];
+	private int codeCount = 0;
+	// Word i is codes[start[i] .. start[i+1])
+	private int[] start = new int[17];
+	private int size = 0;
+	private boolean[] valid = new boolean[16];
+	// Scratch for Dictionary: order to check words in, and the path walked
+	private int[] order = new int[16];
+	private int[] path = new int[16];
+	// Scratch for sorting order
+	private int[] merged = new int[0];
+
+	public void clear() {
+		codeCount = 0;
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void add(CharSequence word) {
+		for(int i=0; i<word.length(); i++) {
+			append(word.charAt(i));
+		}
+		endWord();
+	}
+
+	public void add(char[] word, int offset, int length) {
+		for(int i=offset; i<offset+length; i++) {
+			append(word[i]);
+		}
+		endWord();
+	}
+
+	/**
+	 * Adds a letter to the word being built.
+	 */
+	public void append(char c) {
+		if(codeCount == codes.length) {
+			codes = Arrays.copyOf(codes, codes.length*2);
+		}
+		c = Character.toUpperCase(c);
+		codes[codeCount++] = (c >= 'A' && c <= 'Z' ? (byte)(c - 'A') : NOT_A_LETTER);
+	}
+
+	/**
+	 * Finishes the word being built.
+	 */
+	public void endWord() {
+		if(size+2 > start.length) {
+			start = Arrays.copyOf(start, start.length*2);
+			valid = Arrays.copyOf(valid, start.length);
+			order = Arrays.copyOf(order, start.length);
+		}
+		size++;
+		start[size] = codeCount;
+		valid[size-1] = false;
+	}
+
+	public int length(int i) {
+		return start[i+1] - start[i];
+	}
+
+	/**
+	 * Whether word i was found by the last check of this batch.
+	 */
+	public boolean isValid(int i) {
+		return valid[i];
+	}
+
+	public String word(int i) {
+		StringBuilder sb = new StringBuilder(length(i));
+		for(int j=start[i]; j<start[i+1]; j++) {
+			sb.append(codes[j] == NOT_A_LETTER ? '?' : (char)('A' + codes[j]));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Packs word i for PerfectWordHash, or returns -1 if it cannot be.
+	 */
+	public long packed(int i) {
+		int len = length(i);
+		if(len > PerfectWordHash.MAX_LETTERS) {
+			return -1;
+		}
+		long key = 0;
+		for(int j=start[i]; j<start[i+1]; j++) {
+			if(codes[j] == NOT_A_LETTER) {
+				return -1;
+			}
+			key = (key << 5) | (codes[j]+1);
+		}
+		return key;
+	}
+
+	/**
+	 * Checks every word: those short enough in hash (if not null), the rest
+	 * against lex, walking them in sorted order so that a prefix shared with
+	 * the previous word walked is only walked once. Stops at the first word
+	 * that is not found if stopAtInvalid is set. Returns the number of words
+	 * not found.
+	 */
+	int check(Lexicon lex, PerfectWordHash hash, boolean stopAtInvalid) {
+		sort();
+		int maxLen = 0;
+		for(int i=0; i<size; i++) {
+			maxLen = Math.max(maxLen, length(i));
+		}
+		if(path.length < maxLen+1) {
+			path = new int[maxLen+1];
+		}
+		path[0] = lex.root();
+		// path[0..known] are nodes on the previous word's path
+		int known = 0;
+		int prev = -1;
+		int invalid = 0;
+		for(int k=0; k<size; k++) {
+			int w = order[k];
+			int len = length(w);
+			long packed = (hash == null ? -1 : packed(w));
+			if(packed >= 0) {
+				valid[w] = hash.contains(packed);
+				if(!valid[w]) {
+					invalid++;
+					if(stopAtInvalid) {
+						break;
+					}
+				}
+				continue;
+			}
+			int d = Math.min(known, prev < 0 ? 0 : commonPrefix(prev, w));
+			int node = path[d];
+			while(d < len && node != Lexicon.NONE) {
+				int code = codes[start[w]+d];
+				node = (code == NOT_A_LETTER ? Lexicon.NONE : lex.getNextLetter(node, (char)('A' + code)));
+				path[++d] = node;
+			}
+			known = (node == Lexicon.NONE ? d-1 : d);
+			prev = w;
+			valid[w] = (node != Lexicon.NONE && lex.isEndOfWord(node));
+			if(!valid[w]) {
+				invalid++;
+				if(stopAtInvalid) {
+					break;
+				}
+			}
+		}
+		return invalid;
+	}
+
+	private int commonPrefix(int a, int b) {
+		int len = Math.min(length(a), length(b));
+		int i = 0;
+		while(i < len && codes[start[a]+i] == codes[start[b]+i]) {
+			i++;
+		}
+		return i;
+	}
+
+	private int compare(int a, int b) {
+		int common = commonPrefix(a, b);
+		if(common < length(a) && common < length(b)) {
+			return codes[start[a]+common] - codes[start[b]+common];
+		}
+		return length(a) - length(b);
+	}
+
+	/**
+	 * Puts the word indexes in order into order[0..size): runs of up to 16
+	 * are insertion sorted, then merged pairwise through a scratch array
+	 * that is kept for reuse, so sorting allocates nothing once the batch
+	 * has grown to size.
+	 */
+	private void sort() {
+		for(int i=0; i<size; i++) {
+			order[i] = i;
+		}
+		// A handful of cross words, the usual case, is a single run
+		for(int lo=0; lo<size; lo+=16) {
+			insertionSort(lo, Math.min(lo+16, size));
+		}
+		if(size <= 16) {
+			return;
+		}
+		if(merged.length < size) {
+			merged = new int[order.length];
+		}
+		int[] from = order;
+		int[] to = merged;
+		for(int width=16; width<size; width*=2) {
+			for(int lo=0; lo<size; lo+=2*width) {
+				merge(from, to, lo, Math.min(lo+width, size), Math.min(lo+2*width, size));
+			}
+			int[] t = from;
+			from = to;
+			to = t;
+		}
+		if(from != order) {
+			System.arraycopy(from, 0, order, 0, size);
+		}
+	}
+
+	private void insertionSort(int lo, int hi) {
+		for(int i=lo+1; i<hi; i++) {
+			int w = order[i];
+			int j = i;
+			while(j > lo && compare(order[j-1], w) > 0) {
+				order[j] = order[j-1];
+				j--;
+			}
+			order[j] = w;
+		}
+	}
+
+	/**
+	 * Merges the sorted runs from[lo .. mid) and from[mid .. hi) into
+	 * to[lo .. hi).
+	 */
+	private void merge(int[] from, int[] to, int lo, int mid, int hi) {
+		int a = lo;
+		int b = mid;
+		for(int k=lo; k<hi; k++) {
+			if(b == hi || (a < mid && compare(from[a], from[b]) <= 0)) {
+				to[k] = from[a++];
+			}
+			else {
+				to[k] = from[b++];
+			}
+		}
+	}
+}
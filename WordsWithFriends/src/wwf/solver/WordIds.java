@@ -0,0 +1,181 @@
+package wwf.solver;
+
+import java.util.Arrays;
+
+/**
+ * Numbers the words of a lexicon 0..wordCount()-1 in alphabetical order, so
+ * that a word can be carried around as an int.
+ *
+ * Each node stores how many words lie beneath it, and for each of its edges
+ * how many words come before that edge's subtree within the node's own (the
+ * node's own word, if it ends one, plus the earlier edges' words). A word's
+ * id is the sum of those counts along its path, and an id leads back to its
+ * word by choosing at each node the edge whose range holds it. Both take
+ * time proportional to the word's length.
+ *
+ * Ids only depend on the set of words, so every backend built from the same
+ * word lists gives the same ids.
+ */
+public class WordIds {
+	private Lexicon lex;
+	private NodeClasses classes;
+	// Per node number: words at or beneath it, and where its edges' counts
+	// start in before (-1 if not counted yet)
+	private int[] below;
+	private int[] edgeStart;
+	private int[] before;
+	private int edgeCount = 0;
+
+	private WordIds(Lexicon lex, NodeClasses classes) {
+		this.lex = lex;
+		this.classes = classes;
+	}
+
+	public static WordIds build(Lexicon lex) {
+		return build(lex, NodeClasses.handles(lex));
+	}
+
+	/**
+	 * Keeps the counts per node number rather than per handle, so nodes
+	 * with the same words beneath them share them.
+	 */
+	static WordIds build(Lexicon lex, NodeClasses classes) {
+		WordIds ids = new WordIds(lex, classes);
+		int limit = classes.count();
+		ids.below = new int[limit];
+		ids.edgeStart = new int[limit];
+		for(int i=0; i<limit; i++) {
+			ids.edgeStart[i] = -1;
+		}
+		ids.before = new int[Math.max(16, limit)];
+		ids.count(lex.root());
+		return ids;
+	}
+
+	/**
+	 * Fills in node's counts, and those of every node beneath it.
+	 */
+	private int count(int node) {
+		int k = classes.of(node);
+		if(edgeStart[k] >= 0) {
+			return below[k];
+		}
+		int mask = lex.childMask(node);
+		int first = edgeCount;
+		edgeCount += Integer.bitCount(mask);
+		if(edgeCount > before.length) {
+			before = Arrays.copyOf(before, Math.max(edgeCount, before.length*2));
+		}
+		edgeStart[k] = first;
+		int total = (lex.isEndOfWord(node) ? 1 : 0);
+		int e = first;
+		for(int m = mask; m != 0; m &= m-1) {
+			before[e++] = total;
+			char c = (char)('A' + Integer.numberOfTrailingZeros(m));
+			total += count(lex.getNextLetter(node, c));
+		}
+		below[k] = total;
+		return total;
+	}
+
+	public int wordCount() {
+		return below[classes.of(lex.root())];
+	}
+
+	/**
+	 * How many words come before the subtree reached from node by letter c,
+	 * counting from the first word at or beneath node. c must be one of
+	 * node's letters. Adding these up along a path gives a word's id.
+	 */
+	public int offset(int node, char c) {
+		int bit = 1 << (c - 'A');
+		return before[edgeStart[classes.of(node)] + Integer.bitCount(lex.childMask(node) & (bit-1))];
+	}
+
+	/**
+	 * The id of word, or -1 if it is not a word.
+	 */
+	public int id(CharSequence word) {
+		int node = lex.root();
+		int id = 0;
+		for(int i=0; i<word.length(); i++) {
+			char c = Character.toUpperCase(word.charAt(i));
+			int next = lex.getNextLetter(node, c);
+			if(next == Lexicon.NONE) {
+				return -1;
+			}
+			id += offset(node, c);
+			node = next;
+		}
+		return (lex.isEndOfWord(node) ? id : -1);
+	}
+
+	/**
+	 * The id of the word in w[offset .. offset+length), or -1.
+	 */
+	public int id(char[] w, int offset, int length) {
+		int node = lex.root();
+		int id = 0;
+		for(int i=offset; i<offset+length; i++) {
+			char c = Character.toUpperCase(w[i]);
+			int next = lex.getNextLetter(node, c);
+			if(next == Lexicon.NONE) {
+				return -1;
+			}
+			id += offset(node, c);
+			node = next;
+		}
+		return (lex.isEndOfWord(node) ? id : -1);
+	}
+
+	public String word(int id) {
+		char[] buf = new char[32];
+		int len;
+		while((len = word(id, buf)) > buf.length) {
+			buf = new char[len];
+		}
+		return new String(buf, 0, len);
+	}
+
+	/**
+	 * Writes the word with the given id into buf, as far as it fits, and
+	 * returns its length.
+	 */
+	public int word(int id, char[] buf) {
+		if(id < 0 || id >= wordCount()) {
+			throw new IllegalArgumentException("No word with id " + id);
+		}
+		int node = lex.root();
+		int len = 0;
+		while(true) {
+			if(id == 0 && lex.isEndOfWord(node)) {
+				return len;
+			}
+			// The last edge whose subtree starts at or before id
+			int mask = lex.childMask(node);
+			int start = edgeStart[classes.of(node)];
+			int lo = start;
+			int hi = lo + Integer.bitCount(mask) - 1;
+			while(lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if(before[mid] <= id) {
+					lo = mid;
+				}
+				else {
+					hi = mid - 1;
+				}
+			}
+			id -= before[lo];
+			// Letter of the k-th set bit of mask
+			for(int k = lo - start; k > 0; k--) {
+				mask &= mask-1;
+			}
+			char c = (char)('A' + Integer.numberOfTrailingZeros(mask));
+			if(len < buf.length) {
+				buf[len] = c;
+			}
+			len++;
+			node = lex.getNextLetter(node, c);
+		}
+	}
+}
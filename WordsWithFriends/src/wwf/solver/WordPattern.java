@@ -0,0 +1,381 @@
+package wwf.solver;
+
+import java.util.Arrays;
+
+/**
+ * A word-finder query, for Dictionary.findMatching. The pattern is read left
+ * to right, one element per letter:
+ *   A        that letter
+ *   ? or .   any letter
+ *   [AEIOU]  any of those letters; [^AEIOU] any letter but those
+ *   *        any number of letters, including none
+ * Lengths, letters the word must contain, and a rack the word must be made
+ * from (with '*' for a blank) can be added.
+ *
+ * The query is matched while walking the word graph rather than against a
+ * list of candidates: the pattern is followed as a small automaton alongside
+ * the walk, and a branch is left as soon as the pattern, the lengths of the
+ * words below it, the required letters or the rack rule it out. Matches are
+ * passed on as they are found, in alphabetical order.
+ */
+public class WordPattern {
+	// Up to 63 elements, so that a set of pattern positions fits in a long
+	private static final int MAX_ELEMENTS = 63;
+	private static final int ALL_LETTERS = (1 << 26) - 1;
+
+	/**
+	 * Receives the matches of a query.
+	 */
+	public interface Listener {
+		/**
+		 * Returns false to stop the query.
+		 */
+		boolean found(String word);
+	}
+
+	private String pattern;
+	// Element i matches a letter in classes[i]; repeated elements match any
+	// number of them
+	private int[] classes;
+	private boolean[] repeated;
+	// After i elements have been matched, bit k is set if the word can end k
+	// letters later (bit 63: 63 or more)
+	private long[] remaining;
+	private int minLength = 0;
+	private int maxLength = Integer.MAX_VALUE;
+	private int[] required = new int[26];
+	private int requiredCount = 0;
+	private int[] rack = null;
+	private int rackBlanks = 0;
+
+	private WordPattern(String pattern) {
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Parses a pattern (see above). Letters are case-insensitive.
+	 */
+	public static WordPattern compile(String pattern) throws IllegalArgumentException {
+		WordPattern p = new WordPattern(pattern);
+		int[] classes = new int[pattern.length()];
+		boolean[] repeated = new boolean[pattern.length()];
+		int count = 0;
+		for(int i=0; i<pattern.length(); i++) {
+			char c = Character.toUpperCase(pattern.charAt(i));
+			int cls;
+			boolean rep = false;
+			if(c >= 'A' && c <= 'Z') {
+				cls = 1 << (c - 'A');
+			}
+			else if(c == '?' || c == '.') {
+				cls = ALL_LETTERS;
+			}
+			else if(c == '*') {
+				cls = ALL_LETTERS;
+				rep = true;
+				if(count > 0 && repeated[count-1]) {
+					// ** is the same as *
+					continue;
+				}
+			}
+			else if(c == '[') {
+				int end = pattern.indexOf(']', i);
+				if(end < 0) {
+					throw new IllegalArgumentException("Unclosed [ in pattern " + pattern + ".");
+				}
+				boolean negate = (end > i+1 && pattern.charAt(i+1) == '^');
+				cls = 0;
+				for(int j=(negate ? i+2 : i+1); j<end; j++) {
+					char l = Character.toUpperCase(pattern.charAt(j));
+					if(l < 'A' || l > 'Z') {
+						throw new IllegalArgumentException("Only letters can go in [] in pattern " + pattern + ".");
+					}
+					cls |= 1 << (l - 'A');
+				}
+				if(negate) {
+					cls = ALL_LETTERS & ~cls;
+				}
+				i = end;
+			}
+			else {
+				throw new IllegalArgumentException("Unexpected '" + pattern.charAt(i) + "' in pattern " + pattern + ".");
+			}
+			if(count == MAX_ELEMENTS) {
+				throw new IllegalArgumentException("Patterns can have at most " + MAX_ELEMENTS + " elements.");
+			}
+			classes[count] = cls;
+			repeated[count] = rep;
+			count++;
+		}
+		p.classes = Arrays.copyOf(classes, count);
+		p.repeated = Arrays.copyOf(repeated, count);
+		p.remaining = new long[count+1];
+		int fixed = 0;
+		boolean open = false;
+		for(int i=count; i>=0; i--) {
+			if(i < count) {
+				if(repeated[i]) {
+					open = true;
+				}
+				else {
+					fixed++;
+				}
+			}
+			if(fixed > 63) {
+				p.remaining[i] = 0;
+			}
+			else {
+				p.remaining[i] = (open ? -1L << fixed : 1L << fixed);
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Only words of at least min letters.
+	 */
+	public WordPattern minLength(int min) {
+		minLength = min;
+		return this;
+	}
+
+	/**
+	 * Only words of at most max letters.
+	 */
+	public WordPattern maxLength(int max) {
+		maxLength = max;
+		return this;
+	}
+
+	/**
+	 * Only words with each of these letters in them (a letter given twice has
+	 * to be in the word twice).
+	 */
+	public WordPattern requiring(String letters) {
+		for(int i=0; i<letters.length(); i++) {
+			char c = Character.toUpperCase(letters.charAt(i));
+			if(c >= 'A' && c <= 'Z') {
+				required[c - 'A']++;
+				requiredCount++;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Only words that can be made from these tiles, '*' being a blank.
+	 */
+	public WordPattern fromRack(String tiles) {
+		rack = new int[26];
+		rackBlanks = 0;
+		for(int i=0; i<tiles.length(); i++) {
+			char c = Character.toUpperCase(tiles.charAt(i));
+			if(c >= 'A' && c <= 'Z') {
+				rack[c - 'A']++;
+			}
+			else if(c == '*') {
+				rackBlanks++;
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+	/**
+	 * Pattern positions reachable from the set states without reading a
+	 * letter: past any repeated element.
+	 */
+	private long closure(long states) {
+		for(int i=0; i<classes.length; i++) {
+			if((states & (1L << i)) != 0 && repeated[i]) {
+				states |= 1L << (i+1);
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * The pattern positions after reading letter bit from states.
+	 */
+	private long step(long states, int bit) {
+		long next = 0;
+		for(long m = states; m != 0; m &= m-1) {
+			int i = Long.numberOfTrailingZeros(m);
+			if(i < classes.length && (classes[i] & bit) != 0) {
+				next |= (repeated[i] ? 1L << i : 1L << (i+1));
+			}
+		}
+		return closure(next);
+	}
+
+	/**
+	 * The letters that can come next from states.
+	 */
+	private int nextLetters(long states) {
+		int letters = 0;
+		for(long m = states; m != 0; m &= m-1) {
+			int i = Long.numberOfTrailingZeros(m);
+			if(i < classes.length) {
+				letters |= classes[i];
+			}
+		}
+		return letters;
+	}
+
+	/**
+	 * Bit k set if a word can end k letters after reaching states.
+	 */
+	private long endsAfter(long states) {
+		long ends = 0;
+		for(long m = states; m != 0; m &= m-1) {
+			ends |= remaining[Long.numberOfTrailingZeros(m)];
+		}
+		return ends;
+	}
+
+	/**
+	 * Walks snap's words, passing the matches to listener.
+	 */
+	void search(LexiconSnapshot snap, Listener listener) {
+		new Walk(snap, listener).run();
+	}
+
+	/**
+	 * State of one search.
+	 */
+	private class Walk {
+		Lexicon lex;
+		SubtreeInfo info;
+		int infoLimit = Integer.MAX_VALUE;
+		Listener listener;
+		char[] word = new char[64];
+		int[] rackLeft;
+		int blanksLeft = rackBlanks;
+		int[] requiredLeft = required.clone();
+		int requiredLeftCount = requiredCount;
+		// Bit k set if a word may end after k letters
+		long lengthsAllowed;
+		boolean stopped = false;
+
+		Walk(LexiconSnapshot snap, Listener listener) {
+			this.lex = snap.lexicon();
+			this.info = snap.subtrees();
+			if(snap.overlaid()) {
+				infoLimit = snap.overlay().baseLimit();
+			}
+			this.listener = listener;
+			this.rackLeft = (rack == null ? null : rack.clone());
+			int max = Math.min(maxLength, 63);
+			lengthsAllowed = (max < minLength ? 0 : (-1L >>> (63 - max)) & (-1L << Math.max(minLength, 1)));
+		}
+
+		void run() {
+			if(lengthsAllowed != 0) {
+				walk(lex.root(), 0, closure(1L));
+			}
+		}
+
+		/**
+		 * Whether some word below node, d letters in, can still match.
+		 */
+		boolean worthEntering(int node, int d, long states) {
+			if(requiredLeftCount > Math.min(maxLength, 64) - d) {
+				return false;
+			}
+			long ends = endsAfter(states);
+			if(node < infoLimit) {
+				ends &= info.lengths(node);
+				if(!rackCovers(node)) {
+					return false;
+				}
+			}
+			return ((ends << d) & lengthsAllowed) != 0;
+		}
+
+		/**
+		 * Whether the rack can cover the letters every word below node needs.
+		 */
+		boolean rackCovers(int node) {
+			if(rackLeft == null) {
+				return true;
+			}
+			int once = info.needOnce(node);
+			int twice = info.needTwice(node);
+			int missing = 0;
+			for(int m = once; m != 0; m &= m-1) {
+				int l = Integer.numberOfTrailingZeros(m);
+				int want = ((twice & (1 << l)) != 0 ? 2 : 1);
+				if(rackLeft[l] < want) {
+					missing += want - rackLeft[l];
+				}
+			}
+			return missing <= blanksLeft;
+		}
+
+		void walk(int node, int d, long states) {
+			if(d > 0 && lex.isEndOfWord(node) && (states & (1L << classes.length)) != 0
+					&& d >= minLength && d <= maxLength && requiredLeftCount == 0) {
+				if(!listener.found(new String(word, 0, d))) {
+					stopped = true;
+					return;
+				}
+			}
+			if(d == word.length || d >= maxLength) {
+				return;
+			}
+			int letters = lex.childMask(node) & nextLetters(states);
+			if(rackLeft != null && blanksLeft == 0) {
+				int inRack = 0;
+				for(int l=0; l<26; l++) {
+					if(rackLeft[l] > 0) {
+						inRack |= 1 << l;
+					}
+				}
+				letters &= inRack;
+			}
+			for(int m = letters; m != 0 && !stopped; m &= m-1) {
+				int l = Integer.numberOfTrailingZeros(m);
+				int bit = 1 << l;
+				char c = (char)('A' + l);
+				long next = step(states, bit);
+				int child = lex.getNextLetter(node, c);
+				// Take the letter from the rack, or else a blank
+				boolean usedBlank = false;
+				if(rackLeft != null) {
+					if(rackLeft[l] > 0) {
+						rackLeft[l]--;
+					}
+					else {
+						blanksLeft--;
+						usedBlank = true;
+					}
+				}
+				boolean wasRequired = (requiredLeft[l] > 0);
+				if(wasRequired) {
+					requiredLeft[l]--;
+					requiredLeftCount--;
+				}
+				if(worthEntering(child, d+1, next)) {
+					word[d] = c;
+					walk(child, d+1, next);
+				}
+				if(wasRequired) {
+					requiredLeft[l]++;
+					requiredLeftCount++;
+				}
+				if(rackLeft != null) {
+					if(usedBlank) {
+						blanksLeft++;
+					}
+					else {
+						rackLeft[l]++;
+					}
+				}
+			}
+		}
+	}
+}